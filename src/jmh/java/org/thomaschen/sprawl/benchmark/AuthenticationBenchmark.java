@@ -0,0 +1,92 @@
+package org.thomaschen.sprawl.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.thomaschen.sprawl.model.User;
+import org.thomaschen.sprawl.repository.UserRepository;
+import org.thomaschen.sprawl.security.CaffeineUserCache;
+import org.thomaschen.sprawl.security.CurrentUserResolver;
+import org.thomaschen.sprawl.security.Role;
+import org.thomaschen.sprawl.security.TokenService;
+
+import java.lang.reflect.Proxy;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of authenticating one request with a bearer token against HTTP Basic through the
+ * DaoAuthenticationProvider, both with their user caches warm so only the credential check is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthenticationBenchmark {
+
+    private static final String USERNAME = "benchmark";
+    private static final String PASSWORD = "benchmark-password";
+
+    // Cost factor of the BCryptPasswordEncoder, 10 is the one the application uses
+    @Param({"10"})
+    int strength;
+
+    TokenService tokenService;
+
+    String token;
+
+    DaoAuthenticationProvider basicProvider;
+
+    @Setup
+    public void setUp() {
+        User user = new User(USERNAME);
+        UserRepository userRepository = (UserRepository) Proxy.newProxyInstance(
+                UserRepository.class.getClassLoader(), new Class<?>[]{UserRepository.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("findByUsername")) {
+                        return Optional.of(user);
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+
+        tokenService = new TokenService(new CurrentUserResolver(userRepository, 1000, 3600),
+                new StandardEnvironment(), "benchmark-secret-benchmark-secret", 3600, 60);
+        token = tokenService.issue(user).getToken();
+
+        BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder(strength);
+        UserDetails details = org.springframework.security.core.userdetails.User.withUsername(USERNAME)
+                .password(passwordEncoder.encode(PASSWORD))
+                .roles(Role.USER.getText())
+                .build();
+        basicProvider = new DaoAuthenticationProvider();
+        basicProvider.setUserDetailsService(username -> details);
+        basicProvider.setPasswordEncoder(passwordEncoder);
+        basicProvider.setUserCache(new CaffeineUserCache(1000, 3600));
+    }
+
+    @Benchmark
+    public Authentication bearerToken() {
+        return tokenService.verify(token);
+    }
+
+    @Benchmark
+    public Authentication basic() {
+        return basicProvider.authenticate(new UsernamePasswordAuthenticationToken(USERNAME, PASSWORD));
+    }
+}
@@ -0,0 +1,47 @@
+package org.thomaschen.sprawl.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.thomaschen.sprawl.model.Task;
+
+import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the duration computation run on every timer stop, over varied intervals so
+ * the result cannot be constant folded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DurationBenchmark {
+
+    private static final int INTERVALS = 1024;
+
+    Calendar[] times;
+
+    int next;
+
+    @Setup
+    public void setUp() {
+        times = new TaskGenerator(42).intervals(INTERVALS);
+    }
+
+    @Benchmark
+    public long durationInSeconds() {
+        int i = next;
+        next = (i + 1) & (INTERVALS - 1);
+        return Task.getDurationInSeconds(times[2 * i], times[2 * i + 1]);
+    }
+}
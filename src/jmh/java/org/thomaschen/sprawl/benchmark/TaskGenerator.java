@@ -0,0 +1,87 @@
+package org.thomaschen.sprawl.benchmark;
+
+import org.thomaschen.sprawl.model.Task;
+import org.thomaschen.sprawl.model.User;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Generates finished tasks shaped like real histories, deterministic for a given seed so runs are comparable.
+ */
+public class TaskGenerator {
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private final Random random;
+    private final User owner = new User("benchmark");
+
+    public TaskGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Generates finished tasks, ordered by updatedAt as the statistics code expects.
+     * @param count number of tasks
+     * @param tagCardinality number of distinct tags to draw from
+     * @param maxTagsPerTask each task carries between 0 and this many tags
+     * @param spreadDays tasks are finished over this many days, ending now
+     * @return the tasks
+     */
+    public List<Task> finishedTasks(int count, int tagCardinality, int maxTagsPerTask, int spreadDays) {
+        long now = System.currentTimeMillis();
+        List<Task> tasks = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            int tagCount = random.nextInt(maxTagsPerTask + 1);
+            List<String> tags = new ArrayList<>(tagCount);
+            for (int j = 0; j < tagCount; j++) {
+                // Skewed towards low tag numbers, as a few tags are used far more than the rest
+                int tag = (int) (tagCardinality * Math.pow(random.nextDouble(), 2));
+                tags.add("tag-" + tag);
+            }
+
+            long expDuration = 300 + random.nextInt(4 * 60 * 60);
+            Task task = new Task(owner, "Task " + i, "", expDuration, tags);
+
+            long finishedAt = now - (long) (random.nextDouble() * spreadDays * MILLIS_PER_DAY);
+            long workedTime = Math.max(1, (long) (expDuration * (0.25 + random.nextDouble() * 1.5)));
+            task.setCreatedAt(toCalendar(finishedAt - workedTime * 1000 - random.nextInt(3 * 24 * 60 * 60) * 1000L));
+            task.setUpdatedAt(toCalendar(finishedAt));
+            task.setWorkedTime(workedTime);
+            task.setIsFinished(true);
+            tasks.add(task);
+        }
+
+        tasks.sort(Comparator.comparing(Task::getUpdatedAt));
+        return tasks;
+    }
+
+    /**
+     * Generates start and stop times of work intervals.
+     * @param count number of intervals
+     * @return alternating start and stop times
+     */
+    public Calendar[] intervals(int count) {
+        long now = System.currentTimeMillis();
+        Calendar[] times = new Calendar[count * 2];
+
+        for (int i = 0; i < count; i++) {
+            long start = now - (long) (random.nextDouble() * 365 * MILLIS_PER_DAY);
+            times[2 * i] = toCalendar(start);
+            times[2 * i + 1] = toCalendar(start + random.nextInt(8 * 60 * 60 * 1000));
+        }
+
+        return times;
+    }
+
+    private static Calendar toCalendar(long millis) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.setTimeInMillis(millis);
+        return calendar;
+    }
+}
@@ -0,0 +1,67 @@
+package org.thomaschen.sprawl.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.thomaschen.sprawl.model.Task;
+import org.thomaschen.sprawl.stats.AggregateStatistics;
+import org.thomaschen.sprawl.stats.TimeSeries;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the in-memory statistics over a user's finished tasks, by history size, tag cardinality
+ * and date spread. Run with the gc profiler to also report the allocation rate, see the jmh profile.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class TaskStatisticsBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    int taskCount;
+
+    @Param({"10", "1000"})
+    int tagCardinality;
+
+    @Param({"30", "3650"})
+    int spreadDays;
+
+    @Param({"3"})
+    int maxTagsPerTask;
+
+    List<Task> tasks;
+
+    @Setup
+    public void setUp() {
+        tasks = new TaskGenerator(42).finishedTasks(taskCount, tagCardinality, maxTagsPerTask, spreadDays);
+    }
+
+    @Benchmark
+    public AggregateStatistics aggregateStatistics() {
+        return Task.getAggregateStatistics(tasks);
+    }
+
+    @Benchmark
+    public List<TimeSeries> timeSeriesEstimationByTag() {
+        return Task.getTimeSeriesEstimationByTag(tasks);
+    }
+
+    @Benchmark
+    public Map allUniqueTags() {
+        return Task.getAllUniqueTags(tasks);
+    }
+}
@@ -0,0 +1,107 @@
+package org.thomaschen.sprawl.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Minimal JSON client of the REST API, timing every call per endpoint. Responses are read to the
+ * end so the keep-alive connection is reused, as a browser would.
+ */
+public class ApiClient {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final String baseUrl;
+    private final Map<String, LatencyRecorder> recorders = new ConcurrentHashMap<>();
+    private volatile boolean recording;
+
+    public ApiClient(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    public static String basic(String username, String password) {
+        return "Basic " + Base64.getEncoder()
+                .encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String bearer(String token) {
+        return "Bearer " + token;
+    }
+
+    /**
+     * Starts or stops recording latencies, so warmup and seeding are left out of the results.
+     */
+    public void setRecording(boolean recording) {
+        this.recording = recording;
+    }
+
+    public Map<String, LatencyRecorder> getRecorders() {
+        return recorders;
+    }
+
+    /**
+     * Calls an endpoint and checks it succeeded.
+     * @param endpoint the name the latency is recorded under
+     * @param method the HTTP method
+     * @param path the path and query
+     * @param authorization the Authorization header
+     * @param body the request body to serialize, or null
+     * @return the parsed response body, or null if it was empty
+     * @throws IOException if the call fails or answers with an error status
+     */
+    public JsonNode call(String endpoint, String method, String path, String authorization, Object body) throws IOException {
+        long start = System.nanoTime();
+        int status = -1;
+        byte[] response = null;
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+            connection.setRequestMethod(method);
+            connection.setRequestProperty("Authorization", authorization);
+            connection.setRequestProperty("Accept", "application/json");
+            if (body != null) {
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", "application/json");
+                try (OutputStream out = connection.getOutputStream()) {
+                    MAPPER.writeValue(out, body);
+                }
+            }
+
+            status = connection.getResponseCode();
+            InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            response = in == null ? new byte[0] : readFully(in);
+        } finally {
+            if (recording) {
+                recorders.computeIfAbsent(endpoint, LatencyRecorder::new)
+                        .record(System.nanoTime() - start, status >= 200 && status < 400);
+            }
+        }
+
+        if (status >= 400) {
+            throw new IOException(method + " " + path + " answered " + status);
+        }
+        return response.length == 0 ? null : MAPPER.readTree(response);
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try (InputStream input = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+}
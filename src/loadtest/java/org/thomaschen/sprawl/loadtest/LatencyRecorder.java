@@ -0,0 +1,57 @@
+package org.thomaschen.sprawl.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Latencies and failures of one endpoint. Every sample is kept, so percentiles are exact.
+ */
+public class LatencyRecorder {
+
+    private final String endpoint;
+    private long[] samples = new long[1024];
+    private int count;
+    private long errors;
+
+    public LatencyRecorder(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public synchronized void record(long nanos, boolean success) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+        if (!success) {
+            errors++;
+        }
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    public synchronized long getErrors() {
+        return errors;
+    }
+
+    /**
+     * Computes latency percentiles in milliseconds by the nearest-rank method.
+     * @param percentiles the percentiles, between 0 and 100
+     * @return the latency at each percentile
+     */
+    public synchronized double[] getPercentilesMillis(double... percentiles) {
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+
+        double[] values = new double[percentiles.length];
+        for (int i = 0; i < percentiles.length && count > 0; i++) {
+            int rank = (int) Math.ceil(percentiles[i] / 100 * count);
+            values[i] = sorted[Math.min(Math.max(rank, 1), count) - 1] / 1e6;
+        }
+        return values;
+    }
+}
@@ -0,0 +1,137 @@
+package org.thomaschen.sprawl.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One simulated client, sending operations drawn from the mix back to back until the deadline.
+ * Each client starts, stops and finishes only tasks it created itself, so clients sharing a user
+ * never race on the same timer and every failure is a real one.
+ */
+public class LoadDriver implements Runnable {
+
+    private static final int OWN_TASKS = 10;
+
+    private final ApiClient client;
+    private final SeededUser user;
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+    private final long deadline;
+    private final AtomicLong failures;
+    private final List<String> ownTasks = new ArrayList<>();
+    private final Random random = new Random();
+    private int created;
+
+    public LoadDriver(ApiClient client, SeededUser user, Map<Operation, Integer> mix, long deadline, AtomicLong failures) {
+        this.client = client;
+        this.user = user;
+        this.deadline = deadline;
+        this.failures = failures;
+
+        this.operations = new Operation[mix.size()];
+        this.cumulativeWeights = new int[mix.size()];
+        int total = 0;
+        int i = 0;
+        for (Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+            total += entry.getValue();
+            operations[i] = entry.getKey();
+            cumulativeWeights[i] = total;
+            i++;
+        }
+    }
+
+    @Override
+    public void run() {
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                this.perform(this.next());
+            } catch (IOException | RuntimeException e) {
+                // Already counted against the endpoint, the total is only used to report the first few
+                if (failures.incrementAndGet() <= 10) {
+                    System.err.println("Load test request failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private Operation next() {
+        int pick = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (pick < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+
+    private void perform(Operation operation) throws IOException {
+        String auth = ApiClient.bearer(user.getToken());
+
+        switch (operation) {
+            case LIST:
+                client.call("GET /api/task/", "GET", "/api/task/?limit=50&includeTags=true", auth, null);
+                break;
+            case LIST_FINISHED:
+                client.call("GET /api/task/all/finished", "GET", "/api/task/all/finished?limit=50", auth, null);
+                break;
+            case GET:
+                client.call("GET /api/task/{id}", "GET", "/api/task/" + this.ownTask(), auth, null);
+                break;
+            case TIMER:
+                String taskId = this.ownTask();
+                client.call("POST /api/task/{id}/start", "POST", "/api/task/" + taskId + "/start", auth, null);
+                client.call("POST /api/task/{id}/stop", "POST", "/api/task/" + taskId + "/stop", auth, null);
+                break;
+            case CREATE:
+                this.createTask();
+                break;
+            case FINISH:
+                String finished = this.ownTask();
+                ownTasks.remove(finished);
+                client.call("POST /api/task/{id}/finish", "POST", "/api/task/" + finished + "/finish", auth, null);
+                break;
+            case STATS:
+                client.call("GET /api/task/stats", "GET", "/api/task/stats", auth, null);
+                break;
+            case TIMESERIES:
+                if (random.nextBoolean()) {
+                    client.call("GET /api/task/stats/timeseries/estimation", "GET",
+                            "/api/task/stats/timeseries/estimation", auth, null);
+                } else {
+                    client.call("GET /api/task/stats/timeseries/totaltasks", "GET",
+                            "/api/task/stats/timeseries/totaltasks", auth, null);
+                }
+                break;
+            case LOGIN:
+                client.call("GET /api/auth/login", "GET", "/api/auth/login",
+                        ApiClient.basic(user.getUsername(), user.getPassword()), null);
+                break;
+            case PROFILE:
+                client.call("GET /api/user/{id}", "GET", "/api/user/" + user.getUserId(), auth, null);
+                break;
+        }
+    }
+
+    // Keeps a small pool of this client's unfinished tasks, creating one when finishing emptied it
+    private String ownTask() throws IOException {
+        while (ownTasks.size() < OWN_TASKS / 2) {
+            this.createTask();
+        }
+        return ownTasks.get(random.nextInt(ownTasks.size()));
+    }
+
+    private void createTask() throws IOException {
+        JsonNode task = client.call("POST /api/task/", "POST", "/api/task/",
+                ApiClient.bearer(user.getToken()), Seeder.newTask(random, created++));
+        if (ownTasks.size() < OWN_TASKS) {
+            ownTasks.add(task.get("taskId").asText());
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.thomaschen.sprawl.loadtest;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.thomaschen.sprawl.SprawlApplication;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Boots the service against an in-memory database, seeds it through the API and drives a mix of
+ * client traffic at a fixed concurrency, then reports throughput and latency percentiles per endpoint.
+ * Exits with status 1 if the error rate or p99 latency exceed their limits, so a release can be gated on it.
+ *
+ * Run with: mvn -Ploadtest test-compile exec:exec -Dloadtest.args="--users=50 --concurrency=32 --duration=60"
+ */
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+
+        // Devtools would restart the application in a fresh class loader and run this method twice
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        SpringApplication application = new SpringApplication(SprawlApplication.class);
+        application.setAdditionalProfiles("loadtest");
+        ConfigurableApplicationContext context = application.run("--server.port=0");
+
+        int exitCode;
+        try {
+            String port = context.getEnvironment().getProperty("local.server.port");
+            exitCode = run(new ApiClient("http://localhost:" + port), options);
+        } finally {
+            context.close();
+        }
+        System.exit(exitCode);
+    }
+
+    private static int run(ApiClient client, LoadTestOptions options) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(options.getConcurrency());
+        try {
+            System.out.printf("Seeding %d users with %d tasks each%n", options.getUsers(), options.getTasksPerUser());
+            long seedStart = System.nanoTime();
+            Seeder seeder = new Seeder(client);
+            List<Future<SeededUser>> seeding = new ArrayList<>();
+            for (int i = 0; i < options.getUsers(); i++) {
+                int index = i;
+                seeding.add(pool.submit(() -> seeder.seedUser(index, options.getTasksPerUser())));
+            }
+            List<SeededUser> users = new ArrayList<>();
+            for (Future<SeededUser> user : seeding) {
+                users.add(user.get());
+            }
+            System.out.printf("Seeded in %.1f s%n", (System.nanoTime() - seedStart) / 1e9);
+
+            AtomicLong failures = new AtomicLong();
+            long measureStart = System.currentTimeMillis() + options.getWarmupSeconds() * 1000L;
+            long deadline = measureStart + options.getDurationSeconds() * 1000L;
+            List<Future<?>> drivers = new ArrayList<>();
+            for (int i = 0; i < options.getConcurrency(); i++) {
+                SeededUser user = users.get(i % users.size());
+                drivers.add(pool.submit(new LoadDriver(client, user, options.getMix(), deadline, failures)));
+            }
+
+            System.out.printf("Warming up for %d s, then measuring %d clients for %d s%n",
+                    options.getWarmupSeconds(), options.getConcurrency(), options.getDurationSeconds());
+            Thread.sleep(Math.max(0, measureStart - System.currentTimeMillis()));
+            client.setRecording(true);
+            for (Future<?> driver : drivers) {
+                driver.get();
+            }
+            client.setRecording(false);
+
+            return report(client.getRecorders(), options);
+        } finally {
+            pool.shutdownNow();
+            pool.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private static int report(Map<String, LatencyRecorder> recorders, LoadTestOptions options) {
+        double seconds = options.getDurationSeconds();
+        long totalCount = 0;
+        long totalErrors = 0;
+        double worstP99 = 0;
+
+        System.out.println();
+        System.out.printf("%-45s %9s %7s %9s %9s %9s %9s %9s%n",
+                "endpoint", "requests", "errors", "req/s", "p50 ms", "p95 ms", "p99 ms", "max ms");
+        for (LatencyRecorder recorder : new TreeMap<>(recorders).values()) {
+            double[] latencies = recorder.getPercentilesMillis(50, 95, 99, 100);
+            System.out.printf("%-45s %9d %7d %9.1f %9.1f %9.1f %9.1f %9.1f%n",
+                    recorder.getEndpoint(), recorder.getCount(), recorder.getErrors(), recorder.getCount() / seconds,
+                    latencies[0], latencies[1], latencies[2], latencies[3]);
+            totalCount += recorder.getCount();
+            totalErrors += recorder.getErrors();
+            worstP99 = Math.max(worstP99, latencies[2]);
+        }
+
+        double errorRate = totalCount == 0 ? 1 : (double) totalErrors / totalCount;
+        System.out.printf("%nTotal %d requests, %.1f req/s, error rate %.3f%%, worst p99 %.1f ms%n",
+                totalCount, totalCount / seconds, errorRate * 100, worstP99);
+
+        List<String> failures = new ArrayList<>();
+        if (errorRate > options.getMaxErrorRate()) {
+            failures.add(String.format("error rate above %.3f%%", options.getMaxErrorRate() * 100));
+        }
+        if (options.getMaxP99Millis() > 0 && worstP99 > options.getMaxP99Millis()) {
+            failures.add("p99 above " + options.getMaxP99Millis() + " ms");
+        }
+        if (failures.isEmpty()) {
+            System.out.println("PASSED");
+            return 0;
+        }
+        System.out.println("FAILED: " + String.join(", ", failures));
+        return 1;
+    }
+}
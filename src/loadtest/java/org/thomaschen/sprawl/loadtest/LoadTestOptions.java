@@ -0,0 +1,119 @@
+package org.thomaschen.sprawl.loadtest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Settings of a load test run, read from --name=value arguments.
+ */
+public class LoadTestOptions {
+
+    private int users = 50;
+    private int tasksPerUser = 200;
+    private int concurrency = 32;
+    private int warmupSeconds = 10;
+    private int durationSeconds = 60;
+    private Map<Operation, Integer> mix = Operation.defaultMix();
+    private double maxErrorRate = 0.01;
+    private long maxP99Millis = 0;
+
+    public static LoadTestOptions parse(String[] args) {
+        LoadTestOptions options = new LoadTestOptions();
+
+        for (String arg : args) {
+            if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg);
+            }
+            String name = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+
+            switch (name) {
+                case "users":
+                    options.users = Integer.parseInt(value);
+                    break;
+                case "tasks-per-user":
+                    options.tasksPerUser = Integer.parseInt(value);
+                    break;
+                case "concurrency":
+                    options.concurrency = Integer.parseInt(value);
+                    break;
+                case "warmup":
+                    options.warmupSeconds = Integer.parseInt(value);
+                    break;
+                case "duration":
+                    options.durationSeconds = Integer.parseInt(value);
+                    break;
+                case "mix":
+                    options.mix = parseMix(value);
+                    break;
+                case "max-error-rate":
+                    options.maxErrorRate = Double.parseDouble(value);
+                    break;
+                case "max-p99-ms":
+                    options.maxP99Millis = Long.parseLong(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option --" + name);
+            }
+        }
+
+        if (options.users < 1 || options.concurrency < 1 || options.durationSeconds < 1) {
+            throw new IllegalArgumentException("users, concurrency and duration must be positive");
+        }
+        return options;
+    }
+
+    // Parses weights such as list=40,timer=20,stats=10; operations left out are not run
+    private static Map<Operation, Integer> parseMix(String value) {
+        Map<Operation, Integer> mix = new LinkedHashMap<>();
+        for (String entry : value.split(",")) {
+            String[] parts = entry.split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected operation=weight but got " + entry);
+            }
+            mix.put(Operation.fromName(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+        }
+        return mix;
+    }
+
+    public int getUsers() {
+        return users;
+    }
+
+    public int getTasksPerUser() {
+        return tasksPerUser;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public int getWarmupSeconds() {
+        return warmupSeconds;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    /**
+     * Relative weight of each operation in the traffic mix.
+     */
+    public Map<Operation, Integer> getMix() {
+        return mix;
+    }
+
+    /**
+     * Highest share of failed requests for the run to pass.
+     */
+    public double getMaxErrorRate() {
+        return maxErrorRate;
+    }
+
+    /**
+     * Highest p99 latency of any endpoint for the run to pass, 0 to not check latency.
+     */
+    public long getMaxP99Millis() {
+        return maxP99Millis;
+    }
+}
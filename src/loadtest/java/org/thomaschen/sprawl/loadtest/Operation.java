@@ -0,0 +1,49 @@
+package org.thomaschen.sprawl.loadtest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * User actions making up the load, with their share of a typical client's traffic.
+ */
+public enum Operation {
+    LIST("list", 30),
+    LIST_FINISHED("finished", 5),
+    GET("get", 10),
+    TIMER("timer", 20),
+    CREATE("create", 5),
+    FINISH("finish", 5),
+    STATS("stats", 10),
+    TIMESERIES("timeseries", 10),
+    LOGIN("login", 3),
+    PROFILE("profile", 2);
+
+    private final String name;
+    private final int defaultWeight;
+
+    Operation(String name, int defaultWeight) {
+        this.name = name;
+        this.defaultWeight = defaultWeight;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public static Operation fromName(String name) {
+        for (Operation operation : values()) {
+            if (operation.name.equals(name)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation " + name);
+    }
+
+    public static Map<Operation, Integer> defaultMix() {
+        Map<Operation, Integer> mix = new LinkedHashMap<>();
+        for (Operation operation : values()) {
+            mix.put(operation, operation.defaultWeight);
+        }
+        return mix;
+    }
+}
@@ -0,0 +1,35 @@
+package org.thomaschen.sprawl.loadtest;
+
+/**
+ * A user registered by the seeder, with the bearer token its traffic is sent with.
+ */
+public class SeededUser {
+
+    private final String userId;
+    private final String username;
+    private final String password;
+    private final String token;
+
+    public SeededUser(String userId, String username, String password, String token) {
+        this.userId = userId;
+        this.username = username;
+        this.password = password;
+        this.token = token;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public String getToken() {
+        return token;
+    }
+}
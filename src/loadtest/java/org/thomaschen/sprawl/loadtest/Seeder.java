@@ -0,0 +1,93 @@
+package org.thomaschen.sprawl.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Creates users and task histories through the public API, so the database holds exactly what real
+ * clients would have produced, statistics and tags included. About half of every user's tasks are
+ * worked on and finished.
+ */
+public class Seeder {
+
+    private static final int BATCH_SIZE = 200;
+
+    private static final String[] TAGS = {"work", "home", "study", "errands", "health", "reading", "email",
+            "meetings", "review", "planning", "design", "ops", "support", "writing", "travel", "finance"};
+
+    private final ApiClient client;
+
+    public Seeder(ApiClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Registers a user and creates their tasks.
+     * @param index number of the user, making the username unique
+     * @param taskCount number of tasks to create
+     * @return the user
+     * @throws IOException if any call fails
+     */
+    public SeededUser seedUser(int index, int taskCount) throws IOException {
+        String username = "loadtest-" + index;
+        String password = "loadtest-" + index;
+        Random random = new Random(index);
+
+        Map<String, Object> registration = new HashMap<>();
+        registration.put("username", username);
+        registration.put("password", password);
+        registration.put("email", username + "@example.com");
+        registration.put("name", "Load Test " + index);
+        JsonNode user = client.call("POST /api/user/register", "POST", "/api/user/register", null, registration);
+
+        JsonNode token = client.call("GET /api/auth/login", "GET", "/api/auth/login", ApiClient.basic(username, password), null);
+        String authorization = ApiClient.bearer(token.get("token").asText());
+
+        for (int created = 0; created < taskCount; created += BATCH_SIZE) {
+            List<Map<String, Object>> batch = new ArrayList<>();
+            for (int i = created; i < Math.min(created + BATCH_SIZE, taskCount); i++) {
+                batch.add(newTask(random, i));
+            }
+
+            List<String> finished = new ArrayList<>();
+            for (JsonNode task : client.call("POST /api/task/batch", "POST", "/api/task/batch", authorization, batch)) {
+                if (random.nextBoolean()) {
+                    finished.add(task.get("taskId").asText());
+                }
+            }
+            if (!finished.isEmpty()) {
+                client.call("POST /api/task/batch/start", "POST", "/api/task/batch/start", authorization, finished);
+                client.call("POST /api/task/batch/stop", "POST", "/api/task/batch/stop", authorization, finished);
+                client.call("POST /api/task/batch/finish", "POST", "/api/task/batch/finish", authorization, finished);
+            }
+        }
+
+        return new SeededUser(user.get("userId").asText(), username, password, token.get("token").asText());
+    }
+
+    /**
+     * Builds the body of a new task with up to three tags.
+     */
+    public static Map<String, Object> newTask(Random random, int index) {
+        Map<String, Object> task = new HashMap<>();
+        task.put("title", "Task " + index);
+        task.put("body", "Synthetic task " + index + " created by the load test");
+        task.put("expDuration", 300 + random.nextInt(2 * 60 * 60));
+
+        int tagCount = random.nextInt(4);
+        List<String> tags = new ArrayList<>(Arrays.asList(TAGS));
+        List<String> picked = new ArrayList<>(tagCount);
+        for (int i = 0; i < tagCount; i++) {
+            picked.add(tags.remove(random.nextInt(tags.size())));
+        }
+        task.put("tags", picked);
+        return task;
+    }
+}
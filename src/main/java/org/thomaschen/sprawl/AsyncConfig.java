@@ -0,0 +1,44 @@
+package org.thomaschen.sprawl;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.task.TaskExecutorBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.AsyncAnnotationBeanPostProcessor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.thomaschen.sprawl.metrics.RequestQueryCounter;
+
+@Configuration
+public class AsyncConfig {
+
+    /**
+     * Spring Boot's default executor, which backs off as soon as any other executor is declared. Kept explicitly
+     * so streamed responses such as exports still run on a bounded pool rather than a thread per request.
+     * Their database work counts against the request that started them.
+     */
+    @Lazy
+    @Bean(name = {TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME,
+            AsyncAnnotationBeanPostProcessor.DEFAULT_TASK_EXECUTOR_BEAN_NAME})
+    public ThreadPoolTaskExecutor applicationTaskExecutor(TaskExecutorBuilder builder) {
+        return builder.taskDecorator(RequestQueryCounter::propagate).build();
+    }
+
+    /**
+     * Bounded pool running statistics computations off the request threads, so heavy analytics can only
+     * saturate this pool and never the threads serving task CRUD. Submissions beyond the queue are rejected.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor statisticsExecutor(@Value("${sprawl.stats.executor.threads:4}") int threads,
+                                                     @Value("${sprawl.stats.executor.queue-capacity:50}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("statistics-");
+        executor.setTaskDecorator(RequestQueryCounter::propagate);
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        return executor;
+    }
+}
@@ -0,0 +1,28 @@
+package org.thomaschen.sprawl;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.orm.jpa.support.OpenEntityManagerInViewInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.persistence.EntityManagerFactory;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    /**
+     * Open-in-view, registered here instead of through spring.jpa.open-in-view so the task event stream can
+     * be left out. An EntityManager opened for an SSE request would hold its JDBC connection until the stream
+     * closes; without one the stream's repository calls release it as soon as they return.
+     */
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        OpenEntityManagerInViewInterceptor interceptor = new OpenEntityManagerInViewInterceptor();
+        interceptor.setEntityManagerFactory(entityManagerFactory);
+        registry.addWebRequestInterceptor(interceptor).excludePathPatterns("/api/task/events");
+    }
+}
@@ -1,39 +1,33 @@
 package org.thomaschen.sprawl.api;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
-import org.thomaschen.sprawl.exception.ResourceNotFoundException;
 import org.thomaschen.sprawl.model.User;
-import org.thomaschen.sprawl.repository.UserRepository;
-
-import java.security.Principal;
+import org.thomaschen.sprawl.security.AuthToken;
+import org.thomaschen.sprawl.security.CurrentUserResolver;
+import org.thomaschen.sprawl.security.TokenService;
 
 @RestController
 @RequestMapping("/api/auth")
 public class AuthController {
 
     @Autowired
-    UserRepository userRepository;
+    CurrentUserResolver currentUserResolver;
 
-    @GetMapping("/login")
-    public ResponseEntity<?> login() {
-        Object principal = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-        String username;
-        if (principal instanceof UserDetails) {
-            username = ((UserDetails)principal).getUsername();
-        } else {
-            username =  principal.toString();
-        }
+    @Autowired
+    TokenService tokenService;
 
-        User target = userRepository.findByUsername(username)
-                .orElseThrow( () -> new ResourceNotFoundException("User", "username", username));
+    // Exchange Basic credentials for a bearer token, bearer tokens are not accepted here
+    @GetMapping("/login")
+    public AuthToken login() {
+        // Resolving the user also warms the user cache for the requests that follow
+        User user = currentUserResolver.getUser();
+        return tokenService.issue(user);
+    }
 
-        if (target == null) {
-            userRepository.save(new User(username));
-        }
-        return ResponseEntity.ok().build();
+    // Issue a short-lived token for connecting to the task event stream from a browser EventSource
+    @GetMapping("/events-token")
+    public AuthToken eventsToken() {
+        return tokenService.issueEventsToken(currentUserResolver.getUser());
     }
 }
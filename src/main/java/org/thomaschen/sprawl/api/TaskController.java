@@ -1,98 +1,276 @@
 package org.thomaschen.sprawl.api;
 
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.thomaschen.sprawl.event.TaskEvent;
+import org.thomaschen.sprawl.event.TaskEventBroadcaster;
+import org.thomaschen.sprawl.exception.InvalidParameterException;
+import org.thomaschen.sprawl.exception.InvalidTaskException;
 import org.thomaschen.sprawl.exception.ResourceNotFoundException;
+import org.thomaschen.sprawl.exception.ServiceBusyException;
+import org.thomaschen.sprawl.exception.TaskConflictException;
 import org.thomaschen.sprawl.exception.TaskFinishedException;
 import org.thomaschen.sprawl.exception.TaskInProgressException;
 import org.thomaschen.sprawl.exception.TaskNotInProgressException;
+import org.thomaschen.sprawl.model.DailyStatistics;
+import org.thomaschen.sprawl.model.Tag;
 import org.thomaschen.sprawl.model.Task;
+import org.thomaschen.sprawl.model.TaskSummary;
+import org.thomaschen.sprawl.model.TasksVersion;
 import org.thomaschen.sprawl.model.User;
+import org.thomaschen.sprawl.model.WorkSession;
 import org.thomaschen.sprawl.repository.TaskRepository;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.thomaschen.sprawl.repository.UserRepository;
-
+import org.thomaschen.sprawl.repository.WorkSessionRepository;
+import org.thomaschen.sprawl.security.CurrentUserResolver;
+import org.thomaschen.sprawl.service.DashboardService;
+import org.thomaschen.sprawl.service.StatisticsService;
+import org.thomaschen.sprawl.service.TagService;
+import org.thomaschen.sprawl.service.TaskExportService;
+import org.thomaschen.sprawl.service.TaskVersionService;
+import org.thomaschen.sprawl.service.WorkSessionBuffer;
+import org.thomaschen.sprawl.service.WorkSessionService;
+import org.thomaschen.sprawl.stats.AggregateStatistics;
+import org.thomaschen.sprawl.stats.Dashboard;
+import org.thomaschen.sprawl.stats.Resolution;
+import org.thomaschen.sprawl.stats.TimeSeries;
+
+import javax.validation.ConstraintViolation;
 import javax.validation.Valid;
+import javax.validation.Validator;
 import java.security.Principal;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 
 @RestController
 @RequestMapping("/api/task")
 public class TaskController {
 
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private static final int MAX_PAGE_SIZE = 1000;
+
     @Autowired
     TaskRepository taskRepository;
 
     @Autowired
     UserRepository userRepository;
 
+    @Autowired
+    StatisticsService statisticsService;
+
+    @Autowired
+    TagService tagService;
+
+    @Autowired
+    CurrentUserResolver currentUserResolver;
+
+    @Autowired
+    Validator validator;
+
+    @Autowired
+    WorkSessionRepository workSessionRepository;
+
+    @Autowired
+    WorkSessionBuffer workSessionBuffer;
+
+    @Autowired
+    WorkSessionService workSessionService;
+
+    @Autowired
+    TaskExportService taskExportService;
+
+    @Autowired
+    TaskVersionService taskVersionService;
+
+    @Autowired
+    TaskEventBroadcaster taskEventBroadcaster;
+
+    @Autowired
+    ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    ThreadPoolTaskExecutor statisticsExecutor;
+
+    @Autowired
+    DashboardService dashboardService;
+
+    @Value("${sprawl.stats.timeout-ms:10000}")
+    long statsTimeout;
+
+    @Value("${sprawl.stats.retry-after-seconds:5}")
+    long statsRetryAfter;
+
+    @Value("${sprawl.tasks.max-batch-size:500}")
+    int maxBatchSize;
+
     // Retrieve current logged in user
     public User getUser() {
-        Object principal = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-        String username;
-        if (principal instanceof UserDetails) {
-            username = ((UserDetails)principal).getUsername();
-        } else {
-            username =  principal.toString();
-        }
+        User user = currentUserResolver.getUser();
+        dashboardService.recordActivity(user);
+        return user;
+    }
 
-        User target = userRepository.findByUsername(username)
-                .orElseThrow( () -> new ResourceNotFoundException("User", "username", username));
+    // Get all Tasks, a page at a time
+    @GetMapping("/all")
+    public ResponseEntity<List<Task>> getGenuineAllTasks(@RequestParam(value = "cursor", required = false) String cursor,
+                                                         @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        TaskCursor position = TaskCursor.decode(cursor);
+        Slice<Task> slice = taskRepository.findPage(position.getCreatedAt(), position.getTaskId(), toPageable(limit));
+        workSessionService.loadSessionTime(slice.getContent());
+        return toPage(slice, task -> TaskCursor.encode(task.getCreatedAt(), task.getTaskId()));
+    }
 
-        if (target == null) {
-            throw new ResourceNotFoundException("User", "username", username);
-        } else {
-            return target;
-        }
+    // Get all Tasks of all users in one response, streamed from the database
+    @GetMapping("/all/export")
+    public ResponseEntity<StreamingResponseBody> exportAllTasks() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .body(out -> taskExportService.writeAll(out));
     }
 
-    // Get all Tasks
-    @GetMapping("/all")
-    public List<Task> getGenuineAllTasks() {
-        return taskRepository.findAll();
+    // Get all Tasks of the current user in one response, streamed from the database
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportTasks() {
+        User user = this.getUser();
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .body(out -> taskExportService.writeByOwner(user, out));
     }
 
-    // Get all Tasks
+    // Get all Tasks, a page at a time
     @GetMapping("/all/finished")
-    public List<Task> getAllFinishedTasks() {
-        return taskRepository.findByOwnerAndIsFinishedTrueOrderByCreatedAtDesc(this.getUser());
+    public ResponseEntity<List<TaskSummary>> getAllFinishedTasks(@RequestParam(value = "includeTags", defaultValue = "false") boolean includeTags,
+                                                                 @RequestParam(value = "cursor", required = false) String cursor,
+                                                                 @RequestParam(value = "limit", defaultValue = "100") int limit,
+                                                                 ServletWebRequest request) {
+        if (this.isNotModified(request, false)) {
+            return null;
+        }
+        TaskCursor position = TaskCursor.decode(cursor);
+        return this.toSummaryPage(taskRepository.findSummariesByOwnerAndIsFinished(this.getUser(), true,
+                position.getCreatedAt(), position.getTaskId(), toPageable(limit)), includeTags);
     }
 
-    // Get all Tasks
+    // Get all Tasks, a page at a time
     @GetMapping("/all/unfinished")
-    public List<Task> getAllUnFinishedTasks() {
-        return taskRepository.findByOwnerAndIsFinishedFalseOrderByCreatedAtDesc(this.getUser());
+    public ResponseEntity<List<TaskSummary>> getAllUnFinishedTasks(@RequestParam(value = "includeTags", defaultValue = "false") boolean includeTags,
+                                                                   @RequestParam(value = "cursor", required = false) String cursor,
+                                                                   @RequestParam(value = "limit", defaultValue = "100") int limit,
+                                                                   ServletWebRequest request) {
+        if (this.isNotModified(request, false)) {
+            return null;
+        }
+        TaskCursor position = TaskCursor.decode(cursor);
+        return this.toSummaryPage(taskRepository.findSummariesByOwnerAndIsFinished(this.getUser(), false,
+                position.getCreatedAt(), position.getTaskId(), toPageable(limit)), includeTags);
     }
 
-    // Get all Tasks
+    // Get all Tasks, a page at a time
     @GetMapping("/")
-    public List<Task> getAllTasks(@RequestParam(value="tags", required=false) String tag) {
+    public ResponseEntity<List<TaskSummary>> getAllTasks(@RequestParam(value="tags", required=false) String tag,
+                                                         @RequestParam(value = "includeTags", defaultValue = "false") boolean includeTags,
+                                                         @RequestParam(value = "cursor", required = false) String cursor,
+                                                         @RequestParam(value = "limit", defaultValue = "100") int limit,
+                                                         ServletWebRequest request) {
+        if (this.isNotModified(request, false)) {
+            return null;
+        }
+        TaskCursor position = TaskCursor.decode(cursor);
         if (tag == null) {
-            return taskRepository.findByOwnerAndIsFinishedFalseOrderByCreatedAtDesc(this.getUser());
+            return this.toSummaryPage(taskRepository.findSummariesByOwnerAndIsFinished(this.getUser(), false,
+                    position.getCreatedAt(), position.getTaskId(), toPageable(limit)), includeTags);
         } else {
-            return taskRepository.findAllByOwnerAndTagsAndIsFinishedFalseOrderByCreatedAtDesc(this.getUser(), tag);
+            return this.toSummaryPage(taskRepository.findUnfinishedSummariesByOwnerAndTag(this.getUser(), Tag.normalize(tag),
+                    position.getCreatedAt(), position.getTaskId(), toPageable(limit)), includeTags);
         }
     }
 
+    private ResponseEntity<List<TaskSummary>> toSummaryPage(Slice<TaskSummary> slice, boolean includeTags) {
+        this.loadTags(slice.getContent(), includeTags);
+        workSessionService.loadSessionTimeOfSummaries(slice.getContent());
+        return toPage(slice, summary -> TaskCursor.encode(summary.getCreatedAt(), summary.getTaskId()));
+    }
+
+    // Respond with a page of a list, pointing to the next page through the X-Next-Cursor header if there is one
+    private static <T> ResponseEntity<List<T>> toPage(Slice<T> slice, Function<T, String> cursorOf) {
+        List<T> content = slice.getContent();
+        if (!slice.hasNext()) {
+            return ResponseEntity.ok(content);
+        }
+        return ResponseEntity.ok()
+                .header(NEXT_CURSOR_HEADER, cursorOf.apply(content.get(content.size() - 1)))
+                .body(content);
+    }
+
+    private static Pageable toPageable(int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new InvalidParameterException("Task", "limit", limit);
+        }
+        return PageRequest.of(0, limit);
+    }
+
+    // Fill in the tag names of Task summaries with one query, if requested
+    private List<TaskSummary> loadTags(List<TaskSummary> summaries, boolean includeTags) {
+        if (!includeTags || summaries.isEmpty()) {
+            return summaries;
+        }
+
+        Map<UUID, TaskSummary> byId = new HashMap<>();
+        for (TaskSummary summary : summaries) {
+            summary.setTags(new ArrayList<>());
+            byId.put(summary.getTaskId(), summary);
+        }
+        for (Object[] row : taskRepository.findTagNamesByTaskIdIn(byId.keySet())) {
+            byId.get((UUID) row[0]).addTag((String) row[1]);
+        }
+
+        return summaries;
+    }
+
     // Create a Task
     @PostMapping("/")
+    @Transactional
     public Task createTask(@Valid @RequestBody Task task) {
         task.setOwner(this.getUser());
-        return taskRepository.save(task);
+        taskVersionService.touch(task.getOwner());
+        tagService.applyTags(task);
+        Task createdTask = taskRepository.save(task);
+        this.publish(TaskEvent.Type.CREATED, createdTask);
+        return createdTask;
     }
 
     // Get a single Task
     @GetMapping("/{id}")
     public Task getTaskById(@PathVariable(value = "id") UUID taskId) {
-        return taskRepository.findByTaskId(taskId)
+        return workSessionService.findTask(taskId)
                 .orElseThrow(() -> new ResourceNotFoundException("Task", "id", taskId));
     }
 
     // Update a Task
     @PutMapping("/{id}")
+    @Transactional
     public Task updateTask(@PathVariable(value = "id") UUID taskId,
                            @Valid @RequestBody Task taskDetails) {
         Task task = taskRepository.findByTaskId(taskId)
@@ -102,125 +280,548 @@ public class TaskController {
             throw new TaskFinishedException("Task", "id", taskId);
         }
 
+        // Clients that send the version they read get a conflict instead of overwriting a newer state
+        if (taskDetails.getVersion() != null && !taskDetails.getVersion().equals(task.getVersion())) {
+            throw new TaskConflictException("Task", "id", taskId);
+        }
+
+        taskVersionService.touch(task.getOwner());
+        // The new worked time replaces the logged sessions as well
+        workSessionService.fold(Collections.singletonList(taskId), Collections.emptyList());
         task.setTitle(taskDetails.getTitle());
         task.setBody(taskDetails.getBody());
         task.setExpDuration(taskDetails.getExpDuration());
         task.setWorkedTime(taskDetails.getWorkedTime());
 
         Task updatedTask = taskRepository.save(task);
+        this.publish(TaskEvent.Type.UPDATED, updatedTask);
         return updatedTask;
     }
 
     @PostMapping("/{id}/start")
+    @Transactional
     public Task startTask(@PathVariable(value = "id") UUID taskId) {
-        Task task = taskRepository.findByTaskId(taskId)
+        Task task = workSessionService.findTask(taskId)
                 .orElseThrow(() -> new ResourceNotFoundException("Task", "id", taskId));
-
-        if (task.getIsFinished()) {
-            throw new TaskFinishedException("Task", "id", taskId);
-        } else if (task.getLastWorkStartAt() != null) {
-            throw new TaskInProgressException("Task", "id", taskId);
-        } else {
-            task.start();
-            return taskRepository.save(task);
+        taskVersionService.touch(task.getOwner());
+
+        Calendar now = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        if (taskRepository.startTask(taskId, now) == 0) {
+            if (task.getIsFinished()) {
+                throw new TaskFinishedException("Task", "id", taskId);
+            } else {
+                throw new TaskInProgressException("Task", "id", taskId);
+            }
         }
+
+        applyTransition(task, now, now);
+        this.publish(TaskEvent.Type.STARTED, task);
+        return task;
     }
 
     @PostMapping("/{id}/stop")
+    @Transactional
     public Task stopTask(@PathVariable(value = "id") UUID taskId) {
-        Task task = taskRepository.findByTaskId(taskId)
+        Task task = workSessionService.findTask(taskId)
                 .orElseThrow(() -> new ResourceNotFoundException("Task", "id", taskId));
 
         if (task.getIsFinished()) {
             throw new TaskFinishedException("Task", "id", taskId);
         } else if (task.getLastWorkStartAt() == null) {
             throw new TaskNotInProgressException("Task", "id", taskId);
-        } else {
-            task.stop();
-            return taskRepository.save(task);
         }
+
+        taskVersionService.touch(task.getOwner());
+        Calendar now = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+
+        // Only applies if nobody stopped or finished the task since it was read
+        if (taskRepository.stopTask(taskId, task.getLastWorkStartAt(), now) == 0) {
+            throw new TaskNotInProgressException("Task", "id", taskId);
+        }
+        WorkSession session = new WorkSession(task, task.getLastWorkStartAt(), now);
+        workSessionBuffer.append(session);
+
+        // The session is queued once this transaction commits, so the read did not count it
+        applyTransition(task, null, now);
+        task.setSessionTime(task.getSessionTime() + session.getDuration());
+        this.publish(TaskEvent.Type.STOPPED, task);
+        return task;
     }
 
     @PostMapping("/{id}/finish")
+    @Transactional
     public ResponseEntity<?> finishTask(@PathVariable(value = "id") UUID taskId) {
         Task task = taskRepository.findByTaskId(taskId)
                 .orElseThrow(() -> new ResourceNotFoundException("Task", "id", taskId));
 
         if (task.getIsFinished()) {
             throw new TaskFinishedException("Task", "id", taskId);
-        } else {
-            // Mark Task as Finished
-            task.finish();
+        }
+
+        taskVersionService.touch(task.getOwner());
+        Calendar now = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        Calendar startedAt = task.getLastWorkStartAt();
 
-            taskRepository.save(task);
-            return ResponseEntity.ok().build();
+        // Finished tasks hold their full worked time, so the running timer and all logged sessions are compacted
+        List<WorkSession> closing = startedAt == null ? Collections.emptyList()
+                : Collections.singletonList(new WorkSession(task, startedAt, now));
+        long folded = workSessionService.fold(Collections.singletonList(taskId), closing).getOrDefault(taskId, 0L);
 
+        int updated = startedAt == null
+                ? taskRepository.finishIdleTask(taskId, folded, now)
+                : taskRepository.finishRunningTask(taskId, startedAt, folded, now);
+        if (updated == 0) {
+            throw new TaskConflictException("Task", "id", taskId);
         }
+
+        applyTransition(task, null, now);
+        task.addWorkedTime(folded);
+        task.setIsFinished(true);
+        statisticsService.recordFinished(task);
+        this.publish(TaskEvent.Type.FINISHED, task);
+        return ResponseEntity.ok().build();
+    }
+
+    // Get the logged work sessions of one of the current user's Tasks, sessions still buffered for writing are not included
+    @GetMapping("/{id}/sessions")
+    public List<WorkSession> getTaskSessions(@PathVariable(value = "id") UUID taskId) {
+        if (taskRepository.findByTaskIdAndOwner(taskId, this.getUser()).isEmpty()) {
+            throw new ResourceNotFoundException("Task", "id", taskId);
+        }
+        return workSessionRepository.findByTaskIdOrderByStartedAtAsc(taskId);
     }
 
     // Delete a Task
     @DeleteMapping("/{id}")
+    @Transactional
     public ResponseEntity<?> deleteTask(@PathVariable(value = "id") UUID taskId) {
         Task task = taskRepository.findByTaskId(taskId)
                 .orElseThrow(() -> new ResourceNotFoundException("Task", "id", taskId));
 
-        User user = userRepository.findByUsername(this.getUser().getUsername())
-                .orElseThrow( () -> new ResourceNotFoundException("User", "username", this.getUser().getUsername()));
+        taskVersionService.touch(task.getOwner());
+        statisticsService.recordRemoved(task);
+        workSessionRepository.deleteByTaskIdIn(Collections.singletonList(taskId));
+        workSessionBuffer.discard(Collections.singletonList(taskId));
 
-        user.deleteTask(task);
-        userRepository.save(user);
+        // Delete directly rather than through User.tasks, which would load every task of the user
         taskRepository.delete(task);
+        this.publish(TaskEvent.Type.DELETED, task);
 
         return ResponseEntity.ok().build();
     }
 
-     // Get Statistics
+    // Create many Tasks
+    @PostMapping("/batch")
+    @Transactional
+    public List<Task> createTasks(@RequestBody List<Task> tasks) {
+        this.checkBatchSize(tasks);
+        User user = this.getUser();
+        for (int i = 0; i < tasks.size(); i++) {
+            Task task = tasks.get(i);
+            Set<ConstraintViolation<Task>> violations = validator.validate(task);
+            if (!violations.isEmpty()) {
+                throw new InvalidTaskException("Task", "index", i);
+            }
+            task.setOwner(user);
+        }
+
+        taskVersionService.touch(user);
+        tagService.applyTags(tasks);
+        List<Task> createdTasks = taskRepository.saveAll(tasks);
+        this.publish(TaskEvent.Type.CREATED, createdTasks);
+        return createdTasks;
+    }
+
+    // Start many Tasks
+    @PostMapping("/batch/start")
+    @Transactional
+    public List<Task> startTasks(@RequestBody List<UUID> taskIds) {
+        this.checkBatchSize(taskIds);
+        User user = this.getUser();
+        List<Task> tasks = this.getOwnedTasks(taskIds);
+        for (Task task : tasks) {
+            if (task.getIsFinished()) {
+                throw new TaskFinishedException("Task", "id", task.getTaskId());
+            } else if (task.getLastWorkStartAt() != null) {
+                throw new TaskInProgressException("Task", "id", task.getTaskId());
+            }
+        }
+
+        taskVersionService.touch(user);
+        Calendar now = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        Set<UUID> ids = new LinkedHashSet<>(taskIds);
+        if (!ids.isEmpty() && taskRepository.startTasks(user, ids, now) != ids.size()) {
+            throw new TaskConflictException("Task", "id", ids);
+        }
+
+        List<Task> startedTasks = workSessionService.loadSessionTime(this.getOwnedTasks(taskIds));
+        this.publish(TaskEvent.Type.STARTED, startedTasks);
+        return startedTasks;
+    }
+
+    // Stop many Tasks
+    @PostMapping("/batch/stop")
+    @Transactional
+    public List<Task> stopTasks(@RequestBody List<UUID> taskIds) {
+        this.checkBatchSize(taskIds);
+        User user = this.getUser();
+        List<Task> tasks = this.getOwnedTasks(taskIds, true);
+        for (Task task : tasks) {
+            if (task.getIsFinished()) {
+                throw new TaskFinishedException("Task", "id", task.getTaskId());
+            }
+        }
+
+        taskVersionService.touch(user);
+        Calendar now = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        Map<UUID, WorkSession> stopped = new HashMap<>();
+        for (Task task : tasks) {
+            if (task.getLastWorkStartAt() != null) {
+                stopped.put(task.getTaskId(), new WorkSession(task, task.getLastWorkStartAt(), now));
+            }
+        }
+
+        // The tasks are locked since they were read, so the update stops exactly the timers seen running
+        if (!stopped.isEmpty() && taskRepository.stopTasks(user, stopped.keySet(), now) != stopped.size()) {
+            throw new TaskConflictException("Task", "id", stopped.keySet());
+        }
+
+        workSessionService.loadSessionTime(tasks);
+        for (Task task : tasks) {
+            WorkSession session = stopped.get(task.getTaskId());
+            if (session != null) {
+                workSessionBuffer.append(session);
+                applyTransition(task, null, now);
+                task.setSessionTime(task.getSessionTime() + session.getDuration());
+            }
+        }
+        this.publish(TaskEvent.Type.STOPPED, tasks);
+        return tasks;
+    }
+
+    // Finish many Tasks
+    @PostMapping("/batch/finish")
+    @Transactional
+    public ResponseEntity<?> finishTasks(@RequestBody List<UUID> taskIds) {
+        this.checkBatchSize(taskIds);
+        List<Task> tasks = this.getOwnedTasks(taskIds, true);
+        for (Task task : tasks) {
+            if (task.getIsFinished()) {
+                throw new TaskFinishedException("Task", "id", task.getTaskId());
+            }
+        }
+
+        taskVersionService.touch(this.getUser());
+        Calendar now = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        List<WorkSession> closing = new ArrayList<>();
+        for (Task task : tasks) {
+            if (task.getLastWorkStartAt() != null) {
+                closing.add(new WorkSession(task, task.getLastWorkStartAt(), now));
+            }
+        }
+        Map<UUID, Long> folded = workSessionService.fold(new LinkedHashSet<>(taskIds), closing);
+
+        // The same conditional updates as a single finish, one per task since each adds its own worked time
+        for (Task task : tasks) {
+            long time = folded.getOrDefault(task.getTaskId(), 0L);
+            int updated = task.getLastWorkStartAt() == null
+                    ? taskRepository.finishIdleTask(task.getTaskId(), time, now)
+                    : taskRepository.finishRunningTask(task.getTaskId(), task.getLastWorkStartAt(), time, now);
+            if (updated == 0) {
+                throw new TaskConflictException("Task", "id", task.getTaskId());
+            }
+        }
+
+        for (Task task : tasks) {
+            applyTransition(task, null, now);
+            task.addWorkedTime(folded.getOrDefault(task.getTaskId(), 0L));
+            task.setIsFinished(true);
+        }
+        statisticsService.recordFinished(tasks);
+        this.publish(TaskEvent.Type.FINISHED, tasks);
+
+        return ResponseEntity.ok().build();
+    }
+
+    // Delete many Tasks
+    @PostMapping("/batch/delete")
+    @Transactional
+    public ResponseEntity<?> deleteTasks(@RequestBody List<UUID> taskIds) {
+        this.checkBatchSize(taskIds);
+        List<Task> tasks = this.getOwnedTasks(taskIds);
+
+        taskVersionService.touch(this.getUser());
+        statisticsService.recordRemoved(tasks);
+        if (!tasks.isEmpty()) {
+            workSessionRepository.deleteByTaskIdIn(new LinkedHashSet<>(taskIds));
+            workSessionBuffer.discard(new LinkedHashSet<>(taskIds));
+        }
+        taskRepository.deleteAll(tasks);
+        this.publish(TaskEvent.Type.DELETED, tasks);
+
+        return ResponseEntity.ok().build();
+    }
+
+    // Stream lifecycle events of the current user's Tasks as they happen
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamEvents() {
+        return taskEventBroadcaster.subscribe(this.getUser().getUserId());
+    }
+
+    // Announce a change to a Task once the current transaction commits
+    private void publish(TaskEvent.Type type, Task task) {
+        eventPublisher.publishEvent(new TaskEvent(type, task.getOwner().getUserId(),
+                Collections.singletonList(task.getTaskId())));
+    }
+
+    // Announce a change to Tasks of the current user once the current transaction commits
+    private void publish(TaskEvent.Type type, List<Task> tasks) {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        List<UUID> ids = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            ids.add(task.getTaskId());
+        }
+        eventPublisher.publishEvent(new TaskEvent(type, this.getUser().getUserId(), ids));
+    }
+
+    // Mirror a timer transition on the Task read before its conditional update, which detached it,
+    // so the response needs no second read
+    private static void applyTransition(Task task, Calendar lastWorkStartAt, Calendar now) {
+        task.setLastWorkStartAt(lastWorkStartAt);
+        task.setUpdatedAt(now);
+        task.setVersion(task.getVersion() + 1);
+    }
+
+    // Report concurrent modifications detected by the Task version as conflicts
+    @ExceptionHandler(ObjectOptimisticLockingFailureException.class)
+    public ResponseEntity<?> handleOptimisticLockingFailure() {
+        return ResponseEntity.status(HttpStatus.CONFLICT).build();
+    }
+
+    // Reject batches that would lock too many rows in one transaction or exceed the statement's placeholder limit
+    private void checkBatchSize(List<?> batch) {
+        if (batch.size() > maxBatchSize) {
+            throw new InvalidParameterException("Task", "batch size", batch.size());
+        }
+    }
+
+    // Load the current user's Tasks with the given ids in one query, failing if any is missing
+    private List<Task> getOwnedTasks(List<UUID> taskIds) {
+        return this.getOwnedTasks(taskIds, false);
+    }
+
+    // Load the current user's Tasks with the given ids in one query, optionally locking them until the transaction ends
+    private List<Task> getOwnedTasks(List<UUID> taskIds, boolean forUpdate) {
+        Set<UUID> ids = new LinkedHashSet<>(taskIds);
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<Task> tasks = forUpdate
+                ? taskRepository.findForUpdateByOwnerAndTaskIdIn(this.getUser(), ids)
+                : taskRepository.findByOwnerAndTaskIdIn(this.getUser(), ids);
+
+        if (tasks.size() != ids.size()) {
+            for (Task task : tasks) {
+                ids.remove(task.getTaskId());
+            }
+            throw new ResourceNotFoundException("Task", "id", ids.iterator().next());
+        }
+
+        return tasks;
+    }
+
+    // Get Statistics, optionally over tasks finished between from (inclusive) and to (exclusive), as ISO-8601 date-times
     @GetMapping("/stats")
-    public String getStats() {
-        User user = userRepository.findByUsername(this.getUser().getUsername())
-                .orElseThrow( () -> new ResourceNotFoundException("User", "username", this.getUser().getUsername()));
+    public DeferredResult<AggregateStatistics> getStats(@RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date from,
+                           @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date to,
+                           ServletWebRequest request) {
+        User user = this.getUser();
+        checkRange(from, to);
+        if (this.isNotModified(request, true)) {
+            return null;
+        }
+
+        Dashboard dashboard = from == null && to == null ? dashboardService.getDashboard(user) : null;
+        if (dashboard != null) {
+            return completed(dashboard.getAggregate());
+        }
+
+        return this.computeAsync(() -> statisticsService.getAggregateStatistics(user, toCalendar(from), toCalendar(to)));
+    }
 
-        List<Task> tasks = taskRepository.findByOwnerAndIsFinishedTrueOrderByUpdatedAtAsc(user);
+    // Recompute Statistics from full history
+    @PostMapping("/stats/rebuild")
+    public DeferredResult<AggregateStatistics> rebuildStats() {
+        User user = this.getUser();
 
-        return Task.getAggregateStatistics(tasks);
+        return this.computeAsync(() -> {
+            statisticsService.rebuild(user);
+            return statisticsService.getAggregateStatistics(user);
+        });
     }
 
-    // Get Statistics
+    // Compare stored Statistics with full history
+    @GetMapping("/stats/verify")
+    public DeferredResult<Map<String, Object>> verifyStats() {
+        User user = this.getUser();
+
+        return this.computeAsync(() -> statisticsService.verify(user));
+    }
+
+    // Get Statistics, hourly unless another resolution is requested
     @GetMapping("/stats/timeseries/estimation")
-    public String getTimeSeriesEstimation() {
-        User user = userRepository.findByUsername(this.getUser().getUsername())
-                .orElseThrow( () -> new ResourceNotFoundException("User", "username", this.getUser().getUsername()));
+    public DeferredResult<List<TimeSeries>> getTimeSeriesEstimation(@RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date from,
+                                          @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date to,
+                                          @RequestParam(value = "resolution", required = false) String resolution,
+                                          ServletWebRequest request) {
+        User user = this.getUser();
+        checkRange(from, to);
+        Resolution bucket = Resolution.parse(resolution);
+        checkAligned(from, to, bucket == null ? Resolution.HOUR : bucket);
+        if (this.isNotModified(request, true)) {
+            return null;
+        }
 
-        List<Task> tasks = taskRepository.findByOwnerAndIsFinishedTrueOrderByUpdatedAtAsc(user);
+        Dashboard dashboard = from == null && to == null && (bucket == null || bucket == Resolution.HOUR)
+                ? dashboardService.getDashboard(user) : null;
+        if (dashboard != null) {
+            return completed(dashboard.getEstimation());
+        }
 
-        return Task.getTimeSeriesEstimation(tasks);
+        return this.computeAsync(() -> statisticsService.getTimeSeriesEstimation(user, toCalendar(from), toCalendar(to),
+                bucket == null ? Resolution.HOUR : bucket));
     }
 
 
-    // Get Statistics
+    // Get Statistics, daily unless another resolution is requested
     @GetMapping("/stats/timeseries/totaltasks")
-    public String getTimeSeriesTotalTasks() {
-        User user = userRepository.findByUsername(this.getUser().getUsername())
-                .orElseThrow( () -> new ResourceNotFoundException("User", "username", this.getUser().getUsername()));
+    public DeferredResult<List<TimeSeries>> getTimeSeriesTotalTasks(@RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date from,
+                                          @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date to,
+                                          @RequestParam(value = "resolution", required = false) String resolution,
+                                          ServletWebRequest request) {
+        User user = this.getUser();
+        checkRange(from, to);
+        Resolution bucket = Resolution.parse(resolution);
+        checkAligned(from, to, bucket == null ? Resolution.DAY : bucket);
+        if (this.isNotModified(request, true)) {
+            return null;
+        }
 
-        List<Task> tasks = taskRepository.findByOwnerAndIsFinishedTrueOrderByUpdatedAtAsc(user);
+        Dashboard dashboard = from == null && to == null && (bucket == null || bucket == Resolution.DAY)
+                ? dashboardService.getDashboard(user) : null;
+        if (dashboard != null) {
+            return completed(dashboard.getTotalTasks());
+        }
 
-        return Task.getTimeSeriesTaskCompletedTotals(tasks);
+        return this.computeAsync(() -> statisticsService.getTimeSeriesTotalTasks(user, toCalendar(from), toCalendar(to),
+                bucket == null ? Resolution.DAY : bucket));
     }
 
 
-    // Get Statistics
+    // Get Statistics, one point per task unless a resolution is requested
     @GetMapping("/stats/timeseries/estimation/tag")
-    public String getTimeSeriesEstimationPerTag() {
-        User user = userRepository.findByUsername(this.getUser().getUsername())
-                .orElseThrow( () -> new ResourceNotFoundException("User", "username", this.getUser().getUsername()));
+    public DeferredResult<List<TimeSeries>> getTimeSeriesEstimationPerTag(@RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date from,
+                                                @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date to,
+                                                @RequestParam(value = "resolution", required = false) String resolution,
+                                                ServletWebRequest request) {
+        User user = this.getUser();
+        checkRange(from, to);
+        if (this.isNotModified(request, true)) {
+            return null;
+        }
 
-        List<Task> allTasks = taskRepository.findByOwnerAndIsFinishedTrueOrderByUpdatedAtAsc(user);
+        Resolution bucket = Resolution.parse(resolution);
+        return this.computeAsync(() -> statisticsService.getTimeSeriesEstimationByTag(user, toCalendar(from), toCalendar(to),
+                bucket));
+    }
+
+    // Run a statistics computation on the bounded statistics executor instead of the request thread.
+    // A full executor or a missed deadline answers 503, and a computation still queued at its deadline never runs
+    private <T> DeferredResult<T> computeAsync(Callable<T> computation) {
+        DeferredResult<T> result = new DeferredResult<>(statsTimeout);
+        Future<?> future;
+        try {
+            future = statisticsExecutor.submit(() -> {
+                try {
+                    result.setResult(computation.call());
+                } catch (Exception e) {
+                    result.setErrorResult(e);
+                }
+            });
+        } catch (TaskRejectedException tre) {
+            throw new ServiceBusyException("Statistics", statsRetryAfter);
+        }
 
-        return Task.getTimeSeriesEstimationByTag(allTasks);
+        result.onTimeout(() -> {
+            future.cancel(true);
+            result.setErrorResult(new ServiceBusyException("Statistics", statsRetryAfter));
+        });
+        return result;
     }
 
+    // Answer with a result that is already available, such as a precomputed dashboard
+    private static <T> DeferredResult<T> completed(T value) {
+        DeferredResult<T> result = new DeferredResult<>();
+        result.setResult(value);
+        return result;
+    }
 
+    // Tell clients of a saturated endpoint when to come back
+    @ExceptionHandler(ServiceBusyException.class)
+    public ResponseEntity<?> handleServiceBusy(ServiceBusyException sbe) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(sbe.getRetryAfterSeconds()))
+                .build();
+    }
 
+    // Answer with 304 Not Modified if the client's copy is current, deciding before any Task is loaded.
+    // Statistics also depend on the current day, lists only on the user's tasks
+    private boolean isNotModified(ServletWebRequest request, boolean daily) {
+        User user = this.getUser();
+        TasksVersion version = taskVersionService.getVersion(user);
+
+        String etag = "\"" + user.getUserId() + "-" + version.getVersion();
+        long lastModified = version.getModifiedAt() == null ? -1 : version.getModifiedAt().getTimeInMillis();
+        if (daily) {
+            long today = DailyStatistics.getEpochDay(Calendar.getInstance(TimeZone.getTimeZone("UTC")));
+            etag += "-" + today;
+            lastModified = Math.max(lastModified, today * 24 * 60 * 60 * 1000);
+        }
+        etag += "\"";
+
+        // Without this Spring Security marks responses no-store, and clients would never revalidate
+        request.getResponse().setHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+        return request.checkNotModified(etag, lastModified);
+    }
+
+    // Reject ranges that cannot contain any task
+    private static void checkRange(Date from, Date to) {
+        if (from != null && to != null && !from.before(to)) {
+            throw new InvalidParameterException("Statistics", "to", to.toInstant());
+        }
+    }
+
+    // Reject bounds inside a rollup bucket, which the stored rollups cannot split
+    private static void checkAligned(Date from, Date to, Resolution resolution) {
+        long millis = resolution.getRollupMillis();
+        if (from != null && Math.floorMod(from.getTime(), millis) != 0) {
+            throw new InvalidParameterException("Statistics", "from", from.toInstant());
+        }
+        if (to != null && Math.floorMod(to.getTime(), millis) != 0) {
+            throw new InvalidParameterException("Statistics", "to", to.toInstant());
+        }
+    }
+
+    private static Calendar toCalendar(Date date) {
+        if (date == null) {
+            return null;
+        }
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.setTime(date);
+        return calendar;
+    }
 
 }
@@ -0,0 +1,73 @@
+package org.thomaschen.sprawl.api;
+
+import org.thomaschen.sprawl.exception.InvalidParameterException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.UUID;
+
+/**
+ * Position in a Task list ordered by creation time and id, both descending. Encoded as an opaque
+ * string so clients pass it back unchanged to fetch the next page.
+ */
+public final class TaskCursor {
+
+    private final Calendar createdAt;
+    private final UUID taskId;
+
+    private TaskCursor(Calendar createdAt, UUID taskId) {
+        this.createdAt = createdAt;
+        this.taskId = taskId;
+    }
+
+    /**
+     * Cursor positioned before the first Task of any list.
+     */
+    public static TaskCursor first() {
+        Calendar createdAt = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        createdAt.clear();
+        createdAt.set(9999, Calendar.DECEMBER, 31);
+        return new TaskCursor(createdAt, new UUID(-1L, -1L));
+    }
+
+    /**
+     * Encodes the position right after a Task.
+     * @param createdAt creation time of the last Task of a page, as stored
+     * @param taskId id of the last Task of a page
+     * @return the encoded cursor
+     */
+    public static String encode(Calendar createdAt, UUID taskId) {
+        String value = createdAt.getTimeInMillis() + ":" + taskId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor received from a client.
+     * @param value the encoded cursor, null or empty for the first page
+     * @return the cursor
+     */
+    public static TaskCursor decode(String value) {
+        if (value == null || value.isEmpty()) {
+            return first();
+        }
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+            int separator = decoded.indexOf(':');
+            Calendar createdAt = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+            createdAt.setTimeInMillis(Long.parseLong(decoded.substring(0, separator)));
+            return new TaskCursor(createdAt, UUID.fromString(decoded.substring(separator + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new InvalidParameterException("Task", "cursor", value);
+        }
+    }
+
+    public Calendar getCreatedAt() {
+        return createdAt;
+    }
+
+    public UUID getTaskId() {
+        return taskId;
+    }
+}
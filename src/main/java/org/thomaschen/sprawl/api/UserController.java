@@ -7,15 +7,19 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.authentication.configurers.provisioning.InMemoryUserDetailsManagerConfigurer;
 import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+import org.springframework.security.core.userdetails.UserCache;
 import org.springframework.web.bind.annotation.*;
 import org.thomaschen.sprawl.exception.ResourceNotFoundException;
 import org.thomaschen.sprawl.model.User;
 import org.thomaschen.sprawl.repository.UserRepository;
+import org.thomaschen.sprawl.repository.WorkSessionRepository;
+import org.thomaschen.sprawl.security.CurrentUserResolver;
 import org.thomaschen.sprawl.security.Role;
 import org.thomaschen.sprawl.security.SprawlDataWebSecurityConfiguration;
+import org.thomaschen.sprawl.service.StatisticsService;
+import org.thomaschen.sprawl.service.TagService;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.annotation.Transactional;
 
 
 import javax.validation.Valid;
@@ -30,12 +34,23 @@ public class UserController {
     @Autowired
     UserRepository userRepository;
 
-    private final InMemoryUserDetailsManager inMemoryUserDetailsManager;
+    @Autowired
+    StatisticsService statisticsService;
 
     @Autowired
-    public UserController(InMemoryUserDetailsManager inMemoryUserDetailsManager) {
-        this.inMemoryUserDetailsManager = inMemoryUserDetailsManager;
-    }
+    TagService tagService;
+
+    @Autowired
+    WorkSessionRepository workSessionRepository;
+
+    @Autowired
+    CurrentUserResolver currentUserResolver;
+
+    @Autowired
+    PasswordEncoder passwordEncoder;
+
+    @Autowired
+    UserCache userCache;
 
     // Get all Users
     @GetMapping("/")
@@ -46,13 +61,15 @@ public class UserController {
     // Create new User
     @PostMapping("/register")
     public User createUserDetail(@Valid @RequestBody User user) {
-
-        inMemoryUserDetailsManager.createUser(org.springframework.security.core.userdetails.User.withUsername(user.getUsername()).password(new BCryptPasswordEncoder().encode(user.getPassword())).roles("USER").build());
+        // Registered users are loaded from the database on login, so store only the hash
+        user.setPassword(passwordEncoder.encode(user.getPassword()));
+        user.setRole(Role.USER);
         return userRepository.save(user);
     }
 
     // Update User using UUID
     @PutMapping("/{id}")
+    @Transactional
     public User updateUserDetail(@PathVariable(value = "id") UUID id,
                                  @Valid @RequestBody User updatedDetails) {
         User user = userRepository.findById(id)
@@ -60,9 +77,18 @@ public class UserController {
 
         user.setEmail(updatedDetails.getEmail());
         user.setName(updatedDetails.getName());
-        user.setPassword(updatedDetails.getPassword());
+        boolean passwordChanged = updatedDetails.getPassword() != null;
+        if (passwordChanged) {
+            user.setPassword(passwordEncoder.encode(updatedDetails.getPassword()));
+        }
 
         User updatedUser = userRepository.save(user);
+        if (passwordChanged) {
+            // Bearer tokens issued under the old password stop verifying
+            userRepository.revokeTokens(updatedUser.getUserId());
+        }
+        currentUserResolver.evict(updatedUser.getUsername());
+        userCache.removeUserFromCache(updatedUser.getUsername());
         return updatedUser;
     }
 
@@ -78,12 +104,18 @@ public class UserController {
 
     // Get Specifc User using UUID
     @DeleteMapping("/{id}")
+    @Transactional
     public ResponseEntity<?> deleteUserById(@PathVariable(value = "id") UUID id) {
 
         User user = userRepository.findById(id)
                 .orElseThrow( () -> new ResourceNotFoundException("User", "id", id));
 
+        statisticsService.deleteStatistics(user);
+        tagService.deleteTags(user);
+        workSessionRepository.deleteByOwnerId(user.getUserId());
         userRepository.delete(user);
+        currentUserResolver.evict(user.getUsername());
+        userCache.removeUserFromCache(user.getUsername());
 
         return ResponseEntity.ok().build();
     }
@@ -0,0 +1,66 @@
+package org.thomaschen.sprawl.event;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.ArrayList;
+
+/**
+ * Lifecycle change of one or more tasks of a user, pushed to the user's open event streams.
+ */
+@JsonPropertyOrder({"type", "taskIds", "at"})
+public class TaskEvent {
+
+    public enum Type {
+        CREATED, UPDATED, STARTED, STOPPED, FINISHED, DELETED;
+
+        /**
+         * Name of the event on the stream.
+         */
+        public String getEventName() {
+            return this.name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final Type type;
+    private final UUID ownerId;
+    private final List<UUID> taskIds;
+    private final long at;
+
+    /**
+     * Constructor for an event that happened now.
+     * @param type the kind of change
+     * @param ownerId the user owning the tasks
+     * @param taskIds the changed tasks
+     */
+    public TaskEvent(Type type, UUID ownerId, Collection<UUID> taskIds) {
+        this.type = type;
+        this.ownerId = ownerId;
+        this.taskIds = new ArrayList<>(taskIds);
+        this.at = System.currentTimeMillis();
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    @JsonIgnore
+    public UUID getOwnerId() {
+        return ownerId;
+    }
+
+    public List<UUID> getTaskIds() {
+        return taskIds;
+    }
+
+    /**
+     * Time the change was published in milliseconds since the epoch.
+     */
+    public long getAt() {
+        return at;
+    }
+}
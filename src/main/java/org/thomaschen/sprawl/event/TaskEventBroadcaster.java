@@ -0,0 +1,234 @@
+package org.thomaschen.sprawl.event;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.thomaschen.sprawl.repository.UserRepository;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes task events to each user's open Server-Sent Event streams once the transaction that caused them commits.
+ *
+ * Every stream has a bounded queue drained by a small shared pool, so a slow client never blocks the request
+ * that published the event or other clients. A stream whose queue overflows is closed; clients reconnect and
+ * refetch, which is cheap thanks to conditional requests.
+ *
+ * Events are only published on the node that handled the change. Changes handled by other nodes are picked up
+ * by polling the tasks version of every user with a stream open on this node, and announced as a
+ * {@code changed} event carrying the new version, after which clients refetch with a conditional request.
+ * Clients therefore see remote changes within the poll interval, without sticky routing.
+ */
+@Component
+public class TaskEventBroadcaster {
+
+    private static final int POLL_CHUNK_SIZE = 500;
+
+    private final Map<UUID, List<Connection>> connections = new ConcurrentHashMap<>();
+
+    // Last tasks version announced to each user with an open stream
+    private final Map<UUID, Long> versions = new ConcurrentHashMap<>();
+
+    @Autowired
+    UserRepository userRepository;
+    private final ExecutorService dispatcher;
+
+    @Value("${sprawl.events.timeout-ms:1800000}")
+    long timeout;
+
+    @Value("${sprawl.events.queue-size:100}")
+    int queueSize;
+
+    @Value("${sprawl.events.max-streams-per-user:5}")
+    int maxStreamsPerUser;
+
+    public TaskEventBroadcaster(@Value("${sprawl.events.dispatch-threads:4}") int dispatchThreads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.dispatcher = Executors.newFixedThreadPool(dispatchThreads, runnable -> {
+            Thread thread = new Thread(runnable, "task-events-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Open a new event stream for a user, closing their oldest stream if they have too many.
+     * @param ownerId the user
+     * @return the stream
+     */
+    public SseEmitter subscribe(UUID ownerId) {
+        SseEmitter emitter = new SseEmitter(timeout);
+        if (!versions.containsKey(ownerId)) {
+            userRepository.findTasksVersion(ownerId)
+                    .ifPresent(version -> versions.putIfAbsent(ownerId, version.getVersion()));
+        }
+        Connection connection = new Connection(ownerId, emitter, queueSize);
+
+        List<Connection> userConnections = connections.compute(ownerId, (id, existing) -> {
+            List<Connection> list = existing == null ? new CopyOnWriteArrayList<>() : existing;
+            list.add(connection);
+            return list;
+        });
+        while (userConnections.size() > maxStreamsPerUser) {
+            this.close(userConnections.get(0));
+        }
+
+        emitter.onCompletion(() -> this.remove(connection));
+        emitter.onTimeout(() -> this.close(connection));
+        emitter.onError(error -> this.remove(connection));
+        return emitter;
+    }
+
+    /**
+     * Queue an event on every stream of the tasks' owner. Runs after commit, or immediately outside of a transaction.
+     * @param event the event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void publish(TaskEvent event) {
+        List<Connection> userConnections = connections.get(event.getOwnerId());
+        if (userConnections == null) {
+            return;
+        }
+        for (Connection connection : userConnections) {
+            this.offer(connection, SseEmitter.event().name(event.getType().getEventName()).data(event));
+        }
+    }
+
+    /**
+     * Announce changes made through other nodes to the streams open on this node, reading the tasks
+     * versions of all connected users in chunked queries.
+     */
+    @Scheduled(fixedDelayString = "${sprawl.events.poll-ms:2000}")
+    public void pollVersions() {
+        List<UUID> userIds = new ArrayList<>(connections.keySet());
+        for (int from = 0; from < userIds.size(); from += POLL_CHUNK_SIZE) {
+            List<UUID> chunk = userIds.subList(from, Math.min(from + POLL_CHUNK_SIZE, userIds.size()));
+            for (Object[] row : userRepository.findTasksVersions(chunk)) {
+                UUID ownerId = (UUID) row[0];
+                long version = ((Number) row[1]).longValue();
+                List<Connection> userConnections = connections.get(ownerId);
+                if (userConnections == null) {
+                    // Disconnected since the poll started
+                    continue;
+                }
+                Long previous = versions.put(ownerId, version);
+                if (previous == null || previous >= version) {
+                    continue;
+                }
+
+                // Changes published on this node are announced again, the conditional refetch answers 304 then
+                for (Connection connection : userConnections) {
+                    this.offer(connection, SseEmitter.event().name("changed")
+                            .data(Collections.singletonMap("version", version)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Keep idle streams open through proxies and detect clients that went away.
+     */
+    @Scheduled(fixedRateString = "${sprawl.events.heartbeat-ms:15000}")
+    public void heartbeat() {
+        for (List<Connection> userConnections : connections.values()) {
+            for (Connection connection : userConnections) {
+                this.offer(connection, SseEmitter.event().comment("heartbeat"));
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (List<Connection> userConnections : connections.values()) {
+            for (Connection connection : userConnections) {
+                this.close(connection);
+            }
+        }
+        dispatcher.shutdownNow();
+    }
+
+    private void offer(Connection connection, SseEmitter.SseEventBuilder event) {
+        if (!connection.queue.offer(event)) {
+            // The client is not keeping up, it has to reconnect and refetch
+            this.close(connection);
+            return;
+        }
+        if (connection.draining.compareAndSet(false, true)) {
+            dispatcher.execute(() -> this.drain(connection));
+        }
+    }
+
+    private void drain(Connection connection) {
+        try {
+            SseEmitter.SseEventBuilder event;
+            while (!connection.closed.get() && (event = connection.queue.poll()) != null) {
+                connection.emitter.send(event);
+            }
+        } catch (IOException | IllegalStateException e) {
+            this.close(connection);
+        } finally {
+            connection.draining.set(false);
+        }
+
+        // An event may have been queued after the loop found the queue empty but before draining was reset
+        if (!connection.closed.get() && !connection.queue.isEmpty() && connection.draining.compareAndSet(false, true)) {
+            dispatcher.execute(() -> this.drain(connection));
+        }
+    }
+
+    private void close(Connection connection) {
+        if (this.remove(connection)) {
+            connection.emitter.complete();
+        }
+    }
+
+    // Forget a stream, returning whether it was still open
+    private boolean remove(Connection connection) {
+        boolean open = connection.closed.compareAndSet(false, true);
+        connection.queue.clear();
+
+        connections.computeIfPresent(connection.ownerId, (id, list) -> {
+            list.remove(connection);
+            if (list.isEmpty()) {
+                versions.remove(id);
+                return null;
+            }
+            return list;
+        });
+        return open;
+    }
+
+    /**
+     * Open event stream of a user with its pending events.
+     */
+    private static class Connection {
+        private final UUID ownerId;
+        private final SseEmitter emitter;
+        private final BlockingQueue<SseEmitter.SseEventBuilder> queue;
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        Connection(UUID ownerId, SseEmitter emitter, int queueSize) {
+            this.ownerId = ownerId;
+            this.emitter = emitter;
+            this.queue = new ArrayBlockingQueue<>(queueSize);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package org.thomaschen.sprawl.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE)
+public class ServiceBusyException extends RuntimeException {
+    private String resourceName;
+    private long retryAfterSeconds;
+
+    public ServiceBusyException( String resourceName, long retryAfterSeconds) {
+        super(String.format("%s is busy, retry after %d seconds", resourceName, retryAfterSeconds));
+        this.resourceName = resourceName;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+
+    public String getResourceName() {
+        return resourceName;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
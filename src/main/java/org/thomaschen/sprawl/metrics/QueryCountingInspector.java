@@ -0,0 +1,16 @@
+package org.thomaschen.sprawl.metrics;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Counts every SQL statement Hibernate prepares against the current request, leaving the SQL unchanged.
+ * Registered through hibernate.session_factory.statement_inspector.
+ */
+public class QueryCountingInspector implements StatementInspector {
+
+    @Override
+    public String inspect(String sql) {
+        RequestQueryCounter.queryExecuted();
+        return sql;
+    }
+}
@@ -0,0 +1,105 @@
+package org.thomaschen.sprawl.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the queries, entity loads and collection fetches of every request per endpoint, next to the
+ * request timers Actuator keeps as http.server.requests. Runs inside the security filters, so requests
+ * that are slow or run many queries are logged with the user who made them. Asynchronous requests, such as
+ * statistics and exports, are recorded once their result is written, including the work of the executor
+ * threads that produced it.
+ */
+@Component
+public class RequestMetricsFilter extends OncePerRequestFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestMetricsFilter.class);
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Value("${sprawl.metrics.slow-request-ms:1000}")
+    long slowRequestMs;
+
+    @Value("${sprawl.metrics.heavy-request-queries:100}")
+    long heavyRequestQueries;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        RequestQueryCounter.start();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            RequestQueryCounter.Counts counts = RequestQueryCounter.stop();
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            String username = authentication == null ? "anonymous" : authentication.getName();
+
+            if (request.isAsyncStarted()) {
+                // The executor threads keep adding to the counts until the result is written
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        record(request, username, counts, start);
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            } else {
+                this.record(request, username, counts, start);
+            }
+        }
+    }
+
+    private void record(HttpServletRequest request, String username, RequestQueryCounter.Counts counts, long start) {
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String uri = pattern == null ? "UNKNOWN" : pattern.toString();
+        this.summary("sprawl.request.queries", request, uri).record(counts.getQueries());
+        this.summary("sprawl.request.entity.loads", request, uri).record(counts.getEntityLoads());
+        this.summary("sprawl.request.collection.fetches", request, uri).record(counts.getCollectionFetches());
+
+        if (elapsedMs >= slowRequestMs || counts.getQueries() >= heavyRequestQueries) {
+            logger.warn("{} {} by {} took {} ms with {} queries, {} entity loads, {} collection fetches",
+                    request.getMethod(), uri, username,
+                    elapsedMs, counts.getQueries(), counts.getEntityLoads(), counts.getCollectionFetches());
+        }
+    }
+
+    private DistributionSummary summary(String name, HttpServletRequest request, String uri) {
+        return DistributionSummary.builder(name)
+                .tag("method", request.getMethod())
+                .tag("uri", uri)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,107 @@
+package org.thomaschen.sprawl.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the database work done for the current request. Counting happens on the request thread between
+ * {@link #start} and {@link #stop}, and on executor threads running tasks submitted meanwhile, which carry
+ * the request's counts along through {@link #propagate}.
+ */
+public final class RequestQueryCounter {
+
+    private static final ThreadLocal<Counts> COUNTS = new ThreadLocal<>();
+
+    private RequestQueryCounter() {
+    }
+
+    public static void start() {
+        COUNTS.set(new Counts());
+    }
+
+    /**
+     * Stops counting on this thread.
+     * @return the work counted since {@link #start}
+     */
+    public static Counts stop() {
+        Counts counts = COUNTS.get();
+        COUNTS.remove();
+        return counts == null ? new Counts() : counts;
+    }
+
+    /**
+     * Wraps a task so the work it does on another thread counts against the request submitting it.
+     * Used as the TaskDecorator of the executors requests hand work to.
+     * @param task the task being submitted
+     * @return the wrapped task, or the task itself if the submitting thread is not counting
+     */
+    public static Runnable propagate(Runnable task) {
+        Counts counts = COUNTS.get();
+        if (counts == null) {
+            return task;
+        }
+
+        return () -> {
+            Counts previous = COUNTS.get();
+            COUNTS.set(counts);
+            try {
+                task.run();
+            } finally {
+                if (previous == null) {
+                    COUNTS.remove();
+                } else {
+                    COUNTS.set(previous);
+                }
+            }
+        };
+    }
+
+    static void queryExecuted() {
+        Counts counts = COUNTS.get();
+        if (counts != null) {
+            counts.queries.incrementAndGet();
+        }
+    }
+
+    static void entityLoaded() {
+        Counts counts = COUNTS.get();
+        if (counts != null) {
+            counts.entityLoads.incrementAndGet();
+        }
+    }
+
+    static void collectionFetched() {
+        Counts counts = COUNTS.get();
+        if (counts != null) {
+            counts.collectionFetches.incrementAndGet();
+        }
+    }
+
+    // Shared with the executor threads doing the request's asynchronous work
+    public static class Counts {
+
+        private final AtomicLong queries = new AtomicLong();
+        private final AtomicLong entityLoads = new AtomicLong();
+        private final AtomicLong collectionFetches = new AtomicLong();
+
+        /**
+         * SQL statements prepared, including inserts, updates and deletes.
+         */
+        public long getQueries() {
+            return queries.get();
+        }
+
+        /**
+         * Entities hydrated from result sets.
+         */
+        public long getEntityLoads() {
+            return entityLoads.get();
+        }
+
+        /**
+         * Lazy collections initialized.
+         */
+        public long getCollectionFetches() {
+            return collectionFetches.get();
+        }
+    }
+}
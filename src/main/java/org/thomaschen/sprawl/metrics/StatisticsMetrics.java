@@ -0,0 +1,63 @@
+package org.thomaschen.sprawl.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Times statistics computations, tagged by operation and by the order of magnitude of their result,
+ * so slow computations can be told apart from large ones.
+ */
+@Component
+public class StatisticsMetrics {
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    /**
+     * Runs and times a statistics computation.
+     * @param operation name of the computation
+     * @param computation the computation
+     * @param size the number of tasks or data points making up a result
+     * @return the result of the computation
+     */
+    public <T> T time(String operation, Supplier<T> computation, ToLongFunction<T> size) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        String bucket = "none";
+        try {
+            T result = computation.get();
+            long resultSize = size.applyAsLong(result);
+            DistributionSummary.builder("sprawl.stats.result.size")
+                    .tag("operation", operation)
+                    .register(meterRegistry)
+                    .record(resultSize);
+            outcome = "success";
+            bucket = sizeBucket(resultSize);
+            return result;
+        } finally {
+            sample.stop(Timer.builder("sprawl.stats.computation")
+                    .tag("operation", operation)
+                    .tag("outcome", outcome)
+                    .tag("size", bucket)
+                    .register(meterRegistry));
+        }
+    }
+
+    // Powers of ten keep the number of tag values small
+    static String sizeBucket(long size) {
+        if (size == 0) {
+            return "0";
+        }
+        long upper = 10;
+        while (size > upper && upper < 1_000_000) {
+            upper *= 10;
+        }
+        return size > upper ? ">" + upper : "<=" + upper;
+    }
+}
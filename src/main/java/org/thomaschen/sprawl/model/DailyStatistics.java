@@ -0,0 +1,135 @@
+package org.thomaschen.sprawl.model;
+
+import org.hibernate.annotations.GenericGenerator;
+
+import javax.persistence.*;
+import java.util.Calendar;
+import java.util.UUID;
+
+/**
+ * Per-day totals over a user's finished tasks, bucketed by the UTC day of each task's last update.
+ */
+@Entity
+@Table(name = "daily_statistics",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"owner_user_id", "epoch_day"}))
+public class DailyStatistics {
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    /**
+     * Unique identifier for the statistics row.
+     */
+    @Id
+    @GeneratedValue(generator = "uuid2")
+    @GenericGenerator(name = "uuid2", strategy = "uuid2")
+    @Column(columnDefinition = "BINARY(16)")
+    private UUID statisticsId;
+
+    /**
+     * User these statistics belong to.
+     */
+    @ManyToOne(optional = false)
+    private User owner;
+
+    /**
+     * Day of the bucket, as days since 1970-01-01 UTC.
+     */
+    @Column(nullable = false)
+    private Long epochDay;
+
+    /**
+     * Number of tasks finished on this day.
+     */
+    @Column(nullable = false)
+    private Long taskCount = 0L;
+
+    /**
+     * Sum of worked time in seconds of tasks finished on this day.
+     */
+    @Column(nullable = false)
+    private Long workedTime = 0L;
+
+    /**
+     * Sum of worked/expected ratios of tasks finished on this day.
+     */
+    @Column(nullable = false)
+    private Double estFactorSum = 0.0;
+
+    /**
+     * Default Constructor
+     */
+    public DailyStatistics() {
+    }
+
+    /**
+     * Constructor for an empty day bucket.
+     * @param owner the user the statistics belong to
+     * @param epochDay the day of the bucket
+     */
+    public DailyStatistics(User owner, long epochDay) {
+        this.owner = owner;
+        this.epochDay = epochDay;
+    }
+
+    /**
+     * Utility method which converts a Calendar to days since 1970-01-01 UTC.
+     * @param time the time object
+     */
+    public static long getEpochDay(Calendar time) {
+        return Math.floorDiv(time.getTimeInMillis(), MILLIS_PER_DAY);
+    }
+
+    /**
+     * Utility method which calculates the worked/expected ratio of a task.
+     * Tasks without a usable expected duration contribute 0 so the sums stay storable.
+     * @param task the task
+     */
+    public static double getEstFactor(Task task) {
+        double estFactor = (double) task.getWorkedTime() / (double) task.getExpDuration();
+        return Double.isNaN(estFactor) || Double.isInfinite(estFactor) ? 0.0 : estFactor;
+    }
+
+    /**
+     * Adds a finished task to this day.
+     * @param task the finished task
+     */
+    public void add(Task task) {
+        this.taskCount++;
+        this.workedTime += task.getWorkedTime();
+        this.estFactorSum += getEstFactor(task);
+    }
+
+    /**
+     * Removes a previously added task from this day.
+     * @param task the finished task being removed
+     */
+    public void remove(Task task) {
+        this.taskCount--;
+        this.workedTime -= task.getWorkedTime();
+        this.estFactorSum -= getEstFactor(task);
+    }
+
+    public UUID getStatisticsId() {
+        return statisticsId;
+    }
+
+    public User getOwner() {
+        return owner;
+    }
+
+    public Long getEpochDay() {
+        return epochDay;
+    }
+
+    public Long getTaskCount() {
+        return taskCount;
+    }
+
+    public Long getWorkedTime() {
+        return workedTime;
+    }
+
+    public Double getEstFactorSum() {
+        return estFactorSum;
+    }
+}
@@ -0,0 +1,125 @@
+package org.thomaschen.sprawl.model;
+
+import org.hibernate.annotations.GenericGenerator;
+
+import javax.persistence.*;
+import java.util.Calendar;
+import java.util.UUID;
+
+/**
+ * Per-hour totals over a user's finished tasks, bucketed by the UTC hour of each task's last update.
+ */
+@Entity
+@Table(name = "hourly_statistics",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"owner_user_id", "epoch_hour"}))
+public class HourlyStatistics {
+
+    private static final long MILLIS_PER_HOUR = 60L * 60 * 1000;
+
+    /**
+     * Unique identifier for the statistics row.
+     */
+    @Id
+    @GeneratedValue(generator = "uuid2")
+    @GenericGenerator(name = "uuid2", strategy = "uuid2")
+    @Column(columnDefinition = "BINARY(16)")
+    private UUID statisticsId;
+
+    /**
+     * User these statistics belong to.
+     */
+    @ManyToOne(optional = false)
+    private User owner;
+
+    /**
+     * Hour of the bucket, as hours since 1970-01-01T00 UTC.
+     */
+    @Column(nullable = false)
+    private Long epochHour;
+
+    /**
+     * Number of tasks finished in this hour.
+     */
+    @Column(nullable = false)
+    private Long taskCount = 0L;
+
+    /**
+     * Sum of worked time in seconds of tasks finished in this hour.
+     */
+    @Column(nullable = false)
+    private Long workedTime = 0L;
+
+    /**
+     * Sum of worked/expected ratios of tasks finished in this hour.
+     */
+    @Column(nullable = false)
+    private Double estFactorSum = 0.0;
+
+    /**
+     * Default Constructor
+     */
+    public HourlyStatistics() {
+    }
+
+    /**
+     * Constructor for an empty hour bucket.
+     * @param owner the user the statistics belong to
+     * @param epochHour the hour of the bucket
+     */
+    public HourlyStatistics(User owner, long epochHour) {
+        this.owner = owner;
+        this.epochHour = epochHour;
+    }
+
+    /**
+     * Utility method which converts a Calendar to hours since 1970-01-01T00 UTC.
+     * @param time the time object
+     */
+    public static long getEpochHour(Calendar time) {
+        return Math.floorDiv(time.getTimeInMillis(), MILLIS_PER_HOUR);
+    }
+
+    /**
+     * Adds a finished task to this hour.
+     * @param task the finished task
+     */
+    public void add(Task task) {
+        this.taskCount++;
+        this.workedTime += task.getWorkedTime();
+        this.estFactorSum += DailyStatistics.getEstFactor(task);
+    }
+
+    /**
+     * Removes a previously added task from this hour.
+     * @param task the finished task being removed
+     */
+    public void remove(Task task) {
+        this.taskCount--;
+        this.workedTime -= task.getWorkedTime();
+        this.estFactorSum -= DailyStatistics.getEstFactor(task);
+    }
+
+    public UUID getStatisticsId() {
+        return statisticsId;
+    }
+
+    public User getOwner() {
+        return owner;
+    }
+
+    public Long getEpochHour() {
+        return epochHour;
+    }
+
+    public Long getTaskCount() {
+        return taskCount;
+    }
+
+    public Long getWorkedTime() {
+        return workedTime;
+    }
+
+    public Double getEstFactorSum() {
+        return estFactorSum;
+    }
+}
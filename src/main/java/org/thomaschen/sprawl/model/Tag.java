@@ -0,0 +1,90 @@
+package org.thomaschen.sprawl.model;
+
+import org.hibernate.annotations.GenericGenerator;
+
+import javax.persistence.*;
+import java.util.UUID;
+
+/**
+ * A user's tag, stored once per owner under its trimmed canonical name.
+ */
+@Entity
+@Table(name = "tags",
+        uniqueConstraints = @UniqueConstraint(name = "uk_tags_owner_name", columnNames = {"owner_user_id", "name"}))
+public class Tag {
+
+    /**
+     * Unique identifier for tag.
+     */
+    @Id
+    @GeneratedValue(generator = "uuid2")
+    @GenericGenerator(name = "uuid2", strategy = "uuid2")
+    @Column(columnDefinition = "BINARY(16)")
+    private UUID tagId;
+
+    /**
+     * User that owns the tag.
+     */
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    private User owner;
+
+    /**
+     * Canonical name of the tag.
+     */
+    @Column(nullable = false)
+    private String name;
+
+    /**
+     * Default Constructor
+     */
+    public Tag() {
+    }
+
+    /**
+     * Constructor for Tag class.
+     * @param owner the user that owns the tag
+     * @param name the canonical name of the tag
+     */
+    public Tag(User owner, String name) {
+        this.owner = owner;
+        this.name = name;
+    }
+
+    /**
+     * Utility method which converts a raw tag into its canonical name.
+     * @param tag the raw tag
+     * @return the canonical name, or null if the tag is blank
+     */
+    public static String normalize(String tag) {
+        if (tag == null) {
+            return null;
+        }
+        String name = tag.trim();
+        return name.isEmpty() ? null : name;
+    }
+
+    public UUID getTagId() {
+        return tagId;
+    }
+
+    public User getOwner() {
+        return owner;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Tag)) return false;
+        Tag that = (Tag) o;
+        return tagId != null && tagId.equals(that.tagId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Tag.class.hashCode();
+    }
+}
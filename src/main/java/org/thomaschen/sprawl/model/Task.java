@@ -3,20 +3,22 @@ package org.thomaschen.sprawl.model;
 
 import com.fasterxml.jackson.annotation.JsonIdentityInfo;
 import com.fasterxml.jackson.annotation.JsonIdentityReference;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.ObjectIdGenerators;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.swagger.annotations.ApiModelProperty;
+import org.hibernate.annotations.BatchSize;
 import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.OptimisticLock;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedDate;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
 import org.thomaschen.sprawl.exception.TaskInProgressException;
 import org.thomaschen.sprawl.exception.TaskNotInProgressException;
+import org.thomaschen.sprawl.stats.AggregateStatistics;
+import org.thomaschen.sprawl.stats.DataPoint;
+import org.thomaschen.sprawl.stats.StatisticsEngine;
+import org.thomaschen.sprawl.stats.TimeSeries;
 
 import javax.persistence.*;
 import javax.validation.constraints.Min;
@@ -31,7 +33,12 @@ import java.util.*;
 
 
 @Entity
-@Table(name = "tasks")
+@Table(name = "tasks", indexes = {
+        @Index(name = "idx_tasks_owner_finished_updated", columnList = "owner_user_id, is_finished, updated_at"),
+        @Index(name = "idx_tasks_owner_finished_created", columnList = "owner_user_id, is_finished, created_at, task_id"),
+        @Index(name = "idx_tasks_owner_created", columnList = "owner_user_id, created_at, task_id"),
+        @Index(name = "idx_tasks_created", columnList = "created_at, task_id")
+})
 @EntityListeners(AuditingEntityListener.class)
 @JsonIgnoreProperties(value = {"createdAt", "updatedAt"},
         allowGetters = true)
@@ -101,18 +108,51 @@ public class Task implements Serializable {
     private Long expDuration;
 
     /**
-     * Actual duration worked on task in seconds.
+     * Actual duration worked on task in seconds. Timer sessions are logged as WorkSessions and folded in
+     * here later, until then they are only counted through sessionTime.
      */
     @NotNull(message = "The above field must not be omitted.")
     @Min(value = 0L, message = "The value must be positive")
     private Long workedTime;
 
+    /**
+     * Duration of logged work sessions not yet folded into workedTime, in seconds.
+     */
+    @Transient
+    @JsonIgnore
+    private long sessionTime;
+
     @Column(nullable = false)
     @ApiModelProperty(hidden = true)
     private Boolean isFinished = false;
 
-    @ElementCollection(fetch = FetchType.EAGER)
-    private List<String> tags;
+    /**
+     * Optimistic lock version, incremented on every update.
+     */
+    @Version
+    @Column(columnDefinition = "bigint not null default 0")
+    private Long version;
+
+    /**
+     * Normalized tags of the task, loaded lazily in batches.
+     */
+    @ManyToMany
+    @JoinTable(name = "task_tag",
+            joinColumns = @JoinColumn(name = "task_id"),
+            inverseJoinColumns = @JoinColumn(name = "tag_id"),
+            indexes = @Index(name = "idx_task_tag_tag", columnList = "tag_id"))
+    @OrderBy("name ASC")
+    @BatchSize(size = 100)
+    @OptimisticLock(excluded = true)
+    @JsonIgnore
+    private Set<Tag> tagEntities = new LinkedHashSet<>();
+
+    /**
+     * Raw tag names received from the client, pending resolution into tag entities.
+     */
+    @Transient
+    @JsonIgnore
+    private List<String> pendingTags;
 
     /**
      * Default Constructor
@@ -141,7 +181,7 @@ public class Task implements Serializable {
         this.lastWorkStartAt = null;
 
         this.isFinished = false;
-        this.tags = tags;
+        this.pendingTags = tags;
     }
 
     /**
@@ -160,9 +200,15 @@ public class Task implements Serializable {
      * Stop Working on this Task.
      */
     public void stop() {
+        this.stop(Calendar.getInstance(TimeZone.getTimeZone("UTC")));
+    }
 
+    /**
+     * Stop Working on this Task at the given time.
+     * @param current the time work stopped
+     */
+    public void stop(Calendar current) {
         if (this.lastWorkStartAt != null && !this.getIsFinished()) {
-            Calendar current = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
             this.addWorkedTime(getDurationInSeconds(this.getLastWorkStartAt(), current));
             this.setLastWorkStartAt(null);
         } else {
@@ -313,35 +359,14 @@ public class Task implements Serializable {
         return totalWorkedTime;
     }
 
-    public static String getAggregateStatistics(List<Task> tasks) {
-        ObjectMapper mapper = new ObjectMapper();
-
-        ObjectNode stats = mapper.createObjectNode();
-
-        stats.put("totalTasks", tasks.size());
-        stats.put("totalOver", Task.getTotalOver(tasks));
-        stats.put("totalUnder", Task.getTotalUnder(tasks));
-        stats.put("avgTaskCompletionTime",Task.getAverageTaskCompletionTime(tasks));
-        stats.put("avgEstFactor", Task.getEstAccuracy(tasks));
-        stats.put("avgDailyTaskTime", Task.getAverageDailyWorkTime(tasks));
-        stats.put("todaysEstFactor", Task.getTodaysAccuracy(tasks));
-        stats.put("todaysWorkedTime", Task.getTodaysWorkedTime(tasks));
-
-        String statsStr = "";
-        try {
-            statsStr = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(stats);
-        } catch (JsonProcessingException jpe) {
-            System.err.println(jpe.toString());
-        }
-
-        return statsStr;
+    public static AggregateStatistics getAggregateStatistics(List<Task> tasks) {
+        return StatisticsEngine.aggregate(tasks);
     }
 
     // TimeSeries Utilities
 
-    public static ArrayNode getTimeSeriesOfTaskEstFactor(List<Task> tasks, String pattern) {
-        ObjectMapper mapper = new ObjectMapper();
-        ArrayNode arrayNode = mapper.createArrayNode();
+    public static List<DataPoint> getTimeSeriesOfTaskEstFactor(List<Task> tasks, String pattern) {
+        List<DataPoint> points = new ArrayList<>(tasks.size());
 
         double runSumEstFactor = 0.0;
         int runTotal = 0;
@@ -350,24 +375,19 @@ public class Task implements Serializable {
 
 
         for (Task task : tasks) {
-            JsonNode taskDataPt = mapper.createObjectNode();
-
             double currEstFactor = (double) task.getWorkedTime() / (double) task.getExpDuration();
             runSumEstFactor = (runSumEstFactor * runTotal + currEstFactor) / (runTotal + 1);
             String date = sdf.format(task.getUpdatedAt().getTime());
 
-            ((ObjectNode) taskDataPt).put("name", date);
-            ((ObjectNode) taskDataPt).put("value", runSumEstFactor);
-
-            arrayNode.add(taskDataPt);
+            points.add(new DataPoint(date, runSumEstFactor));
 
             runTotal++;
         }
 
-        return arrayNode;
+        return points;
     }
 
-    public static ArrayNode getTimeSeriesOfTaskCompletion(List<Task> tasks) {
+    public static List<DataPoint> getTimeSeriesOfTaskCompletion(List<Task> tasks) {
         SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
         sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
         Map<String, Integer> totalMap = new TreeMap<>();
@@ -382,56 +402,22 @@ public class Task implements Serializable {
             }
         }
 
-        ObjectMapper mapper = new ObjectMapper();
-        ArrayNode arrayNode = mapper.createArrayNode();
+        List<DataPoint> points = new ArrayList<>(totalMap.size());
         for(Map.Entry<String, Integer> entry : totalMap.entrySet()) {
-            ObjectNode taskDataPt = mapper.createObjectNode();
-            taskDataPt.put("name", entry.getKey());
-            taskDataPt.put("value", entry.getValue());
-            arrayNode.add(taskDataPt);
+            points.add(new DataPoint(entry.getKey(), entry.getValue()));
         }
 
-        return arrayNode;
+        return points;
     }
 
-    public static String getTimeSeriesEstimation(List<Task> tasks) {
-        ObjectMapper mapper = new ObjectMapper();
-        ObjectNode stats = mapper.createObjectNode();
-
-        ArrayNode taskEstPts = Task.getTimeSeriesOfTaskEstFactor(tasks, "yyyy-MM-dd'T'HH");
-        stats.put("name", "est. factor");
-        stats.putArray("series");
-        stats.set("series", taskEstPts);
-
-
-        String statsStr = "";
-        try {
-            statsStr = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(stats);
-        } catch (JsonProcessingException jpe) {
-            System.err.println(jpe.toString());
-        }
-
-        return '[' + statsStr + ']';
+    public static List<TimeSeries> getTimeSeriesEstimation(List<Task> tasks) {
+        return Collections.singletonList(
+                new TimeSeries("est. factor", Task.getTimeSeriesOfTaskEstFactor(tasks, "yyyy-MM-dd'T'HH")));
     }
 
-    public static String getTimeSeriesTaskCompletedTotals(List<Task> tasks) {
-        ObjectMapper mapper = new ObjectMapper();
-        ObjectNode stats = mapper.createObjectNode();
-
-        ArrayNode totalPts = Task.getTimeSeriesOfTaskCompletion(tasks);
-        stats.put("name", "tasks completed");
-        stats.putArray("series");
-        stats.set("series", totalPts);
-
-
-        String statsStr = "";
-        try {
-            statsStr = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(stats);
-        } catch (JsonProcessingException jpe) {
-            System.err.println(jpe.toString());
-        }
-
-        return '[' + statsStr + ']';
+    public static List<TimeSeries> getTimeSeriesTaskCompletedTotals(List<Task> tasks) {
+        return Collections.singletonList(
+                new TimeSeries("tasks completed", Task.getTimeSeriesOfTaskCompletion(tasks)));
     }
 
     public static Map getAllUniqueTags(List<Task> tasks) {
@@ -453,11 +439,9 @@ public class Task implements Serializable {
 
     public static List<Task> getTasksWithTag(List<Task> tasks, String tag) {
         List<Task> tasksWithTag = new ArrayList<Task>();
+        String name = Tag.normalize(tag);
         for (Task task : tasks) {
-            if (task.getTags().contains(tag)
-                    || task.getTags().contains(tag + ' ')
-                    || task.getTags().contains(' ' + tag)
-                    || task.getTags().contains(' ' + tag + ' ')) {
+            if (task.getTags().contains(name)) {
                 tasksWithTag.add(task);
             }
         }
@@ -465,45 +449,20 @@ public class Task implements Serializable {
         return tasksWithTag;
     }
 
-    public static String getTimeSeriesEstimationByTag(List<Task> tasks) {
-        ObjectMapper mapper = new ObjectMapper();
-        ArrayNode completeStats = mapper.createArrayNode();
+    public static List<TimeSeries> getTimeSeriesEstimationByTag(List<Task> tasks) {
+        List<TimeSeries> completeStats = new ArrayList<>();
 
-        Map<String, Integer> tags = Task.getAllUniqueTags(tasks);
+        Map<String, List<Task>> tags = StatisticsEngine.groupByTag(tasks);
 
-        for (Map.Entry<String, Integer> entry : tags.entrySet()) {
-            System.err.println(entry.getKey() + " : " + entry.getValue());
-        }
-
-        for (Map.Entry<String, Integer> entry : tags.entrySet()) {
-            if (entry.getValue() > 1) {
-                // Create temporary object
-                ObjectNode stats = mapper.createObjectNode();
-                // Place Timeseries Name in JSON Object
-                stats.put("name", entry.getKey());
-                // Place Named Timeseries Empty Array in JSON Object
-                stats.putArray("series");
-                // Retrieve Data Points for this Tag
-                List<Task> tasksWithThisTag = Task.getTasksWithTag(tasks, entry.getKey());
-                ArrayNode taskEstFactorPtsForThisTag = Task.getTimeSeriesOfTaskEstFactor(tasksWithThisTag, "MM-dd-yyyy");
-                // Fill Empty Array with Data Points
-                stats.set("series", taskEstFactorPtsForThisTag);
-                // Add Prepared JSON Object to JSON array of Complete Stats
-                completeStats.add(stats);
+        for (Map.Entry<String, List<Task>> entry : tags.entrySet()) {
+            if (entry.getValue().size() > 1) {
+                // Chart this Tag's Data Points as a Timeseries named after the Tag
+                completeStats.add(new TimeSeries(entry.getKey(),
+                        Task.getTimeSeriesOfTaskEstFactor(entry.getValue(), "MM-dd-yyyy")));
             }
         }
 
-
-        String statsStr = "";
-        try {
-            statsStr = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(completeStats);
-        } catch (JsonProcessingException jpe) {
-            System.err.println(jpe.toString());
-        }
-
-        System.err.println(statsStr);
-
-        return statsStr;
+        return completeStats;
     }
 
     public UUID getTaskId() {
@@ -570,14 +529,26 @@ public class Task implements Serializable {
         this.expDuration = expDuration;
     }
 
+    /**
+     * Retrieve the worked time including logged sessions that are not folded in yet.
+     * @return the worked time in seconds
+     */
     public Long getWorkedTime() {
-        return workedTime;
+        return workedTime == null ? null : workedTime + sessionTime;
     }
 
     public void setWorkedTime(Long workedTime) {
         this.workedTime = workedTime;
     }
 
+    public long getSessionTime() {
+        return sessionTime;
+    }
+
+    public void setSessionTime(long sessionTime) {
+        this.sessionTime = sessionTime;
+    }
+
     public Boolean getIsFinished() {
         return isFinished;
     }
@@ -586,19 +557,62 @@ public class Task implements Serializable {
         isFinished = finished;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    /**
+     * Retrieve the names of this task's tags, including any not yet resolved.
+     * @return the tag names
+     */
     public List<String> getTags() {
-        return tags;
+        if (this.pendingTags != null) {
+            return this.pendingTags;
+        }
+
+        List<String> names = new ArrayList<>(this.tagEntities.size());
+        for (Tag tag : this.tagEntities) {
+            names.add(tag.getName());
+        }
+        return names;
     }
 
+    /**
+     * Replace this task's tags. The names are resolved into tag entities before the task is saved.
+     * @param tags the raw tag names
+     */
     public void setTags(List<String> tags) {
-        this.tags = tags;
+        this.pendingTags = tags;
     }
 
     public void addTag(String tag) {
-        this.tags.add(tag);
+        List<String> tags = new ArrayList<>(this.getTags());
+        tags.add(tag);
+        this.pendingTags = tags;
     }
 
     public void removeTag(String tag) {
-        this.tags.remove(tag);
+        List<String> tags = new ArrayList<>(this.getTags());
+        tags.remove(tag);
+        this.pendingTags = tags;
+    }
+
+    @JsonIgnore
+    public List<String> getPendingTags() {
+        return pendingTags;
+    }
+
+    @JsonIgnore
+    public Set<Tag> getTagEntities() {
+        return tagEntities;
+    }
+
+    public void setTagEntities(Set<Tag> tagEntities) {
+        this.tagEntities = tagEntities;
+        this.pendingTags = null;
     }
 }
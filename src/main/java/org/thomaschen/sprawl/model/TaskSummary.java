@@ -0,0 +1,107 @@
+package org.thomaschen.sprawl.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Read-only view of a Task for list screens, without the body and with tags only when requested.
+ * Property names match those of {@link Task} so clients can use either.
+ */
+public class TaskSummary {
+
+    private final UUID taskId;
+    private final String title;
+    private final Calendar createdAt;
+    private final Calendar updatedAt;
+    private final Calendar lastWorkStartAt;
+    private final Long expDuration;
+    private Long workedTime;
+    private final Boolean isFinished;
+    private final Long version;
+
+    /**
+     * Tag names of the task, null unless they were requested.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<String> tags;
+
+    public TaskSummary(UUID taskId, String title, Calendar createdAt, Calendar updatedAt, Calendar lastWorkStartAt,
+                       Long expDuration, Long workedTime, Boolean isFinished, Long version) {
+        this.taskId = taskId;
+        this.title = title;
+        this.createdAt = createdAt;
+        this.updatedAt = updatedAt;
+        this.lastWorkStartAt = lastWorkStartAt;
+        this.expDuration = expDuration;
+        this.workedTime = workedTime;
+        this.isFinished = isFinished;
+        this.version = version;
+    }
+
+    /**
+     * Adds a tag name, starting the tag list if it has not been loaded yet.
+     * @param tag the tag name
+     */
+    public void addTag(String tag) {
+        if (this.tags == null) {
+            this.tags = new ArrayList<>();
+        }
+        this.tags.add(tag);
+    }
+
+    public UUID getTaskId() {
+        return taskId;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public Calendar getCreatedAt() {
+        return createdAt;
+    }
+
+    public Calendar getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public Calendar getLastWorkStartAt() {
+        return lastWorkStartAt;
+    }
+
+    public Long getExpDuration() {
+        return expDuration;
+    }
+
+    public Long getWorkedTime() {
+        return workedTime;
+    }
+
+    /**
+     * Adds the duration of logged work sessions that are not folded into the task yet.
+     * @param sessionTime the additional time in seconds
+     */
+    public void addSessionTime(long sessionTime) {
+        this.workedTime += sessionTime;
+    }
+
+    public Boolean getIsFinished() {
+        return isFinished;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public List<String> getTags() {
+        return tags;
+    }
+
+    public void setTags(List<String> tags) {
+        this.tags = tags;
+    }
+}
@@ -0,0 +1,28 @@
+package org.thomaschen.sprawl.model;
+
+import java.util.Calendar;
+
+/**
+ * Change counter and time of the last change of a user's tasks, read without loading the user.
+ */
+public class TasksVersion {
+
+    private final long version;
+    private final Calendar modifiedAt;
+
+    public TasksVersion(Long version, Calendar modifiedAt) {
+        this.version = version == null ? 0 : version;
+        this.modifiedAt = modifiedAt;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Time of the last change, or null if the tasks never changed since versioning was introduced.
+     */
+    public Calendar getModifiedAt() {
+        return modifiedAt;
+    }
+}
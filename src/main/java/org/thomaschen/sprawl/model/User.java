@@ -1,6 +1,7 @@
 package org.thomaschen.sprawl.model;
 
 import com.fasterxml.jackson.annotation.JsonIdentityInfo;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.ObjectIdGenerators;
 import io.swagger.annotations.ApiModelProperty;
@@ -9,7 +10,6 @@ import org.hibernate.annotations.GenericGenerator;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedDate;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
-import org.springframework.scheduling.annotation.EnableScheduling;
 import org.thomaschen.sprawl.security.Role;
 
 import javax.persistence.*;
@@ -19,7 +19,6 @@ import java.util.*;
 @Entity
 @Table(name = "users")
 @EntityListeners(AuditingEntityListener.class)
-@EnableScheduling
 @JsonIgnoreProperties(value = {"createdAt", "updatedAt"},
         allowGetters = true)
 @JsonIdentityInfo(generator = ObjectIdGenerators.PropertyGenerator.class, property = "userId")
@@ -78,9 +77,33 @@ public class User {
     private Role role;
 
     /**
-     * Hashmap of all messages currently on Board
+     * Counter bumped on every change to the user's tasks, used to answer conditional requests.
+     * Only ever written through UserRepository.touchTasks.
      */
-    @OneToMany(cascade = CascadeType.ALL, orphanRemoval = true, mappedBy = "owner", fetch = FetchType.EAGER)
+    @Column(columnDefinition = "bigint not null default 0", updatable = false)
+    @JsonIgnore
+    private Long tasksVersion = 0L;
+
+    /**
+     * Date/Time of the last change to the user's tasks.
+     */
+    @Column(updatable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    @JsonIgnore
+    private Calendar tasksModifiedAt;
+
+    /**
+     * Generation of the user's bearer tokens, tokens issued for an older generation are rejected.
+     * Only ever written through UserRepository.revokeTokens.
+     */
+    @Column(columnDefinition = "bigint not null default 0", updatable = false)
+    @JsonIgnore
+    private Long tokenGeneration = 0L;
+
+    /**
+     * Hashmap of all tasks owned by the user. Loaded lazily, query tasks through TaskRepository instead.
+     */
+    @OneToMany(cascade = CascadeType.ALL, orphanRemoval = true, mappedBy = "owner", fetch = FetchType.LAZY)
     @MapKey(name = "taskId")
     private Map<UUID, Task> tasks;
 
@@ -154,6 +177,18 @@ public class User {
         return role;
     }
 
+    public Long getTasksVersion() {
+        return tasksVersion;
+    }
+
+    public Calendar getTasksModifiedAt() {
+        return tasksModifiedAt;
+    }
+
+    public Long getTokenGeneration() {
+        return tokenGeneration;
+    }
+
     public void setRole(Role role) {
         this.role = role;
     }
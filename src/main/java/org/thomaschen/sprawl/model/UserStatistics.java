@@ -0,0 +1,213 @@
+package org.thomaschen.sprawl.model;
+
+import org.hibernate.annotations.GenericGenerator;
+import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+
+import javax.persistence.*;
+import java.util.Calendar;
+import java.util.UUID;
+
+/**
+ * Running totals over a user's finished tasks, maintained incrementally as tasks
+ * are finished or deleted so the aggregate statistics never require a history scan.
+ */
+@Entity
+@Table(name = "user_statistics")
+@EntityListeners(AuditingEntityListener.class)
+public class UserStatistics {
+
+    /**
+     * Layout of the rollup rows kept alongside these totals, bumped whenever a new rollup is introduced
+     * so statistics written before it are rebuilt instead of being extended incrementally.
+     */
+    public static final int ROLLUP_VERSION = 1;
+
+    /**
+     * Unique identifier for the statistics row.
+     */
+    @Id
+    @GeneratedValue(generator = "uuid2")
+    @GenericGenerator(name = "uuid2", strategy = "uuid2")
+    @Column(columnDefinition = "BINARY(16)")
+    private UUID statisticsId;
+
+    /**
+     * User these statistics belong to.
+     */
+    @OneToOne(optional = false)
+    @JoinColumn(unique = true)
+    private User owner;
+
+    /**
+     * Number of finished tasks.
+     */
+    @Column(nullable = false)
+    private Long totalTasks = 0L;
+
+    /**
+     * Number of finished tasks worked longer than expected.
+     */
+    @Column(nullable = false)
+    private Long totalOver = 0L;
+
+    /**
+     * Number of finished tasks worked shorter than expected.
+     */
+    @Column(nullable = false)
+    private Long totalUnder = 0L;
+
+    /**
+     * Sum of worked time in seconds over all finished tasks.
+     */
+    @Column(nullable = false)
+    private Long totalWorkedTime = 0L;
+
+    /**
+     * Sum of worked/expected ratios over all finished tasks.
+     */
+    @Column(nullable = false)
+    private Double totalEstFactor = 0.0;
+
+    /**
+     * Number of distinct UTC days on which at least one task was finished.
+     */
+    @Column(nullable = false)
+    private Long activeDays = 0L;
+
+    /**
+     * Rollup layout these statistics were built with, null for statistics predating the hourly rollup.
+     */
+    private Integer rollupVersion = ROLLUP_VERSION;
+
+    /**
+     * Last Modified Date/time
+     */
+    @Column(nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    @LastModifiedDate
+    private Calendar updatedAt;
+
+    /**
+     * Default Constructor
+     */
+    public UserStatistics() {
+    }
+
+    /**
+     * Constructor for an empty set of statistics.
+     * @param owner the user the statistics belong to
+     */
+    public UserStatistics(User owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * Empties the running totals before they are recomputed with the current rollup layout.
+     */
+    public void reset() {
+        this.totalTasks = 0L;
+        this.totalOver = 0L;
+        this.totalUnder = 0L;
+        this.totalWorkedTime = 0L;
+        this.totalEstFactor = 0.0;
+        this.activeDays = 0L;
+        this.rollupVersion = ROLLUP_VERSION;
+    }
+
+    /**
+     * Marks the totals as out of date, so the next read rebuilds them from the task history.
+     */
+    public void invalidate() {
+        this.rollupVersion = null;
+    }
+
+    /**
+     * Adds a finished task to the running totals.
+     * @param task the finished task
+     * @param firstOfDay whether the task is the first one finished on its day
+     */
+    public void add(Task task, boolean firstOfDay) {
+        this.totalTasks++;
+        if (task.getWorkedTime() > task.getExpDuration()) {
+            this.totalOver++;
+        } else if (task.getWorkedTime() < task.getExpDuration()) {
+            this.totalUnder++;
+        }
+        this.totalWorkedTime += task.getWorkedTime();
+        this.totalEstFactor += DailyStatistics.getEstFactor(task);
+        if (firstOfDay) {
+            this.activeDays++;
+        }
+    }
+
+    /**
+     * Removes a previously added task from the running totals.
+     * @param task the finished task being removed
+     * @param lastOfDay whether the task was the only one left on its day
+     */
+    public void remove(Task task, boolean lastOfDay) {
+        this.totalTasks--;
+        if (task.getWorkedTime() > task.getExpDuration()) {
+            this.totalOver--;
+        } else if (task.getWorkedTime() < task.getExpDuration()) {
+            this.totalUnder--;
+        }
+        this.totalWorkedTime -= task.getWorkedTime();
+        this.totalEstFactor -= DailyStatistics.getEstFactor(task);
+        if (lastOfDay) {
+            this.activeDays--;
+        }
+    }
+
+    public UUID getStatisticsId() {
+        return statisticsId;
+    }
+
+    public User getOwner() {
+        return owner;
+    }
+
+    public void setOwner(User owner) {
+        this.owner = owner;
+    }
+
+    public Long getTotalTasks() {
+        return totalTasks;
+    }
+
+    public Long getTotalOver() {
+        return totalOver;
+    }
+
+    public Long getTotalUnder() {
+        return totalUnder;
+    }
+
+    public Long getTotalWorkedTime() {
+        return totalWorkedTime;
+    }
+
+    public Double getTotalEstFactor() {
+        return totalEstFactor;
+    }
+
+    public Long getActiveDays() {
+        return activeDays;
+    }
+
+    public Integer getRollupVersion() {
+        return rollupVersion;
+    }
+
+    /**
+     * Whether the rollup rows of these statistics match the current layout.
+     */
+    public boolean isCurrent() {
+        return rollupVersion != null && rollupVersion == ROLLUP_VERSION;
+    }
+
+    public Calendar getUpdatedAt() {
+        return updatedAt;
+    }
+}
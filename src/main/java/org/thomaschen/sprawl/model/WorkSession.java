@@ -0,0 +1,126 @@
+package org.thomaschen.sprawl.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import io.swagger.annotations.ApiModelProperty;
+import org.hibernate.annotations.GenericGenerator;
+
+import javax.persistence.*;
+import java.util.Calendar;
+import java.util.UUID;
+
+/**
+ * One completed stretch of work on a task, from a start to the matching stop.
+ * Sessions reference their task and owner by id so that writing them never touches
+ * the tasks table. Their durations count towards the task's worked time until they
+ * are compacted, that is folded into Task.workedTime.
+ */
+@Entity
+@Table(name = "work_sessions", indexes = {
+        @Index(name = "idx_work_sessions_task", columnList = "task_id, started_at"),
+        @Index(name = "idx_work_sessions_owner", columnList = "owner_id, started_at"),
+        @Index(name = "idx_work_sessions_compacted", columnList = "compacted, stopped_at")
+})
+public class WorkSession {
+
+    /**
+     * Unique identifier for the session.
+     */
+    @Id
+    @GeneratedValue(generator = "uuid2")
+    @GenericGenerator(name = "uuid2", strategy = "uuid2")
+    @Column(columnDefinition = "BINARY(16)")
+    @ApiModelProperty(hidden = true)
+    private UUID sessionId;
+
+    /**
+     * Task worked on.
+     */
+    @Column(nullable = false, columnDefinition = "BINARY(16)")
+    private UUID taskId;
+
+    /**
+     * User owning the task.
+     */
+    @Column(nullable = false, columnDefinition = "BINARY(16)")
+    private UUID ownerId;
+
+    /**
+     * Date/Time the work started.
+     */
+    @Column(nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Calendar startedAt;
+
+    /**
+     * Date/Time the work stopped.
+     */
+    @Column(nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Calendar stoppedAt;
+
+    /**
+     * Duration of the session in seconds, as added to the task's workedTime.
+     */
+    @Column(nullable = false)
+    private Long duration;
+
+    /**
+     * Whether the duration has been folded into the task's workedTime. Rows logged before
+     * compaction existed were already counted by their stop, hence the column default.
+     */
+    @Column(nullable = false, columnDefinition = "bit not null default 1")
+    @JsonIgnore
+    private Boolean compacted = false;
+
+    /**
+     * Default Constructor
+     */
+    public WorkSession() {
+    }
+
+    /**
+     * Constructor for WorkSession class.
+     * @param task the task worked on
+     * @param startedAt when the work started
+     * @param stoppedAt when the work stopped
+     */
+    public WorkSession(Task task, Calendar startedAt, Calendar stoppedAt) {
+        this.taskId = task.getTaskId();
+        this.ownerId = task.getOwner().getUserId();
+        this.startedAt = startedAt;
+        this.stoppedAt = stoppedAt;
+        this.duration = Task.getDurationInSeconds(startedAt, stoppedAt);
+    }
+
+    public UUID getSessionId() {
+        return sessionId;
+    }
+
+    public UUID getTaskId() {
+        return taskId;
+    }
+
+    public UUID getOwnerId() {
+        return ownerId;
+    }
+
+    public Calendar getStartedAt() {
+        return startedAt;
+    }
+
+    public Calendar getStoppedAt() {
+        return stoppedAt;
+    }
+
+    public Long getDuration() {
+        return duration;
+    }
+
+    public Boolean getCompacted() {
+        return compacted;
+    }
+
+    public void setCompacted(Boolean compacted) {
+        this.compacted = compacted;
+    }
+}
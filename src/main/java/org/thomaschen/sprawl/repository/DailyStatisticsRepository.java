@@ -0,0 +1,30 @@
+package org.thomaschen.sprawl.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.thomaschen.sprawl.model.DailyStatistics;
+import org.thomaschen.sprawl.model.User;
+import org.thomaschen.sprawl.stats.RollupTotals;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface DailyStatisticsRepository extends JpaRepository<DailyStatistics, UUID> {
+
+    public Optional<DailyStatistics> findByOwnerAndEpochDay(User owner, Long epochDay);
+
+    public List<DailyStatistics> findByOwnerOrderByEpochDayAsc(User owner);
+
+    @Query("select d from DailyStatistics d where d.owner = ?1 and d.epochDay >= ?2 and d.epochDay < ?3 " +
+            "order by d.epochDay asc")
+    public List<DailyStatistics> findRange(User owner, Long from, Long to);
+
+    @Query("select new org.thomaschen.sprawl.stats.RollupTotals(sum(d.taskCount), sum(d.estFactorSum)) " +
+            "from DailyStatistics d where d.owner = ?1 and d.epochDay < ?2")
+    public RollupTotals sumBefore(User owner, Long before);
+
+    public void deleteByOwner(User owner);
+}
@@ -0,0 +1,30 @@
+package org.thomaschen.sprawl.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.thomaschen.sprawl.model.HourlyStatistics;
+import org.thomaschen.sprawl.model.User;
+import org.thomaschen.sprawl.stats.RollupTotals;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface HourlyStatisticsRepository extends JpaRepository<HourlyStatistics, UUID> {
+
+    public Optional<HourlyStatistics> findByOwnerAndEpochHour(User owner, Long epochHour);
+
+    public List<HourlyStatistics> findByOwnerOrderByEpochHourAsc(User owner);
+
+    @Query("select h from HourlyStatistics h where h.owner = ?1 and h.epochHour >= ?2 and h.epochHour < ?3 " +
+            "order by h.epochHour asc")
+    public List<HourlyStatistics> findRange(User owner, Long from, Long to);
+
+    @Query("select new org.thomaschen.sprawl.stats.RollupTotals(sum(h.taskCount), sum(h.estFactorSum)) " +
+            "from HourlyStatistics h where h.owner = ?1 and h.epochHour < ?2")
+    public RollupTotals sumBefore(User owner, Long before);
+
+    public void deleteByOwner(User owner);
+}
@@ -0,0 +1,24 @@
+package org.thomaschen.sprawl.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.stereotype.Repository;
+import org.thomaschen.sprawl.model.Tag;
+import org.thomaschen.sprawl.model.User;
+
+import javax.persistence.LockModeType;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface TagRepository extends JpaRepository<Tag, UUID> {
+
+    public List<Tag> findByOwnerAndNameIn(User owner, Collection<String> names);
+
+    // A locking read sees tags committed after the current transaction's snapshot
+    @Lock(LockModeType.PESSIMISTIC_READ)
+    public List<Tag> findForShareByOwnerAndNameIn(User owner, Collection<String> names);
+
+    public void deleteByOwner(User owner);
+}
@@ -1,31 +1,152 @@
 package org.thomaschen.sprawl.repository;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 import org.thomaschen.sprawl.model.Task;
+import org.thomaschen.sprawl.model.TaskSummary;
 import org.thomaschen.sprawl.model.User;
+import org.thomaschen.sprawl.stats.TaskTotals;
 
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import java.util.Calendar;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
 @Repository
 public interface TaskRepository extends JpaRepository<Task, UUID> {
 
     public List<Task> findByTaskIdAndOwner(UUID id, User owner);
     public List<Task> findByOwner(User owner);
     public Optional<Task> findByTaskId(UUID taskId);
+    public List<Task> findByOwnerAndTaskIdIn(User owner, Collection<UUID> taskIds);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select t from Task t where t.owner = ?1 and t.taskId in ?2")
+    public List<Task> findForUpdateByOwnerAndTaskIdIn(User owner, Collection<UUID> taskIds);
+
+    @Query("select t from Task t join t.tagEntities g where t.owner = ?1 and g.owner = ?1 and g.name = ?2")
     public List<Task> findAllByOwnerAndTags(User owner, String tag);
+
+    @Query("select t from Task t join t.tagEntities g where t.owner = ?1 and g.owner = ?1 and g.name = ?2 " +
+            "and t.isFinished = false order by t.createdAt desc")
     public List<Task> findAllByOwnerAndTagsAndIsFinishedFalseOrderByCreatedAtDesc(User owner, String tag);
+
     public List<Task> findByOwnerAndIsFinishedFalseOrderByCreatedAtDesc(User owner);
     public List<Task> findByOwnerAndIsFinishedTrueOrderByCreatedAtDesc(User owner);
     public List<Task> findByOwnerAndIsFinishedTrueOrderByUpdatedAtAsc(User owner);
+
+    // Served by idx_tasks_owner_finished_updated, so a narrow range never reads the rest of the history
+    @Query("select t from Task t where t.owner = ?1 and t.isFinished = true " +
+            "and t.updatedAt >= ?2 and t.updatedAt < ?3 order by t.updatedAt asc")
+    public List<Task> findFinishedBetween(User owner, Calendar from, Calendar to);
+
+    // Aggregates finished in a range are computed by the database so only a single row is transferred
+
+    @Query("select new org.thomaschen.sprawl.stats.TaskTotals(count(t), " +
+            "sum(case when t.workedTime > t.expDuration then 1 else 0 end), " +
+            "sum(case when t.workedTime < t.expDuration then 1 else 0 end), " +
+            "sum(t.workedTime), " +
+            "sum(case when t.expDuration <> 0 then t.workedTime * 1.0 / t.expDuration else 0.0 end), " +
+            "count(distinct cast(t.updatedAt as date))) " +
+            "from Task t where t.owner = ?1 and t.isFinished = true and t.updatedAt >= ?2 and t.updatedAt < ?3")
+    public TaskTotals sumFinishedBetween(User owner, Calendar from, Calendar to);
+
+    @Query("select distinct t from Task t join t.tagEntities g where t.owner = ?1 and g.owner = ?1 and g.name in ?2")
     public List<Task> findAllByOwnerAndTagsContains(User owner, List<String> tags);
 
+    // List screens read summaries, which leave out the body and load tags only on request. Lists are paged by
+    // keyset on (createdAt, taskId) descending so deep pages cost the same as the first one
+
+    @Query("select new org.thomaschen.sprawl.model.TaskSummary(t.taskId, t.title, t.createdAt, t.updatedAt, " +
+            "t.lastWorkStartAt, t.expDuration, t.workedTime, t.isFinished, t.version) " +
+            "from Task t where t.owner = ?1 and t.isFinished = ?2 " +
+            "and t.createdAt <= ?3 and (t.createdAt < ?3 or t.taskId < ?4) " +
+            "order by t.createdAt desc, t.taskId desc")
+    public Slice<TaskSummary> findSummariesByOwnerAndIsFinished(User owner, Boolean isFinished,
+                                                                Calendar createdAt, UUID taskId, Pageable pageable);
+
+    @Query("select new org.thomaschen.sprawl.model.TaskSummary(t.taskId, t.title, t.createdAt, t.updatedAt, " +
+            "t.lastWorkStartAt, t.expDuration, t.workedTime, t.isFinished, t.version) " +
+            "from Task t join t.tagEntities g where t.owner = ?1 and g.owner = ?1 and g.name = ?2 " +
+            "and t.isFinished = false and t.createdAt <= ?3 and (t.createdAt < ?3 or t.taskId < ?4) " +
+            "order by t.createdAt desc, t.taskId desc")
+    public Slice<TaskSummary> findUnfinishedSummariesByOwnerAndTag(User owner, String tag,
+                                                                   Calendar createdAt, UUID taskId, Pageable pageable);
+
+    @Query("select t from Task t where t.createdAt <= ?1 and (t.createdAt < ?1 or t.taskId < ?2) " +
+            "order by t.createdAt desc, t.taskId desc")
+    public Slice<Task> findPage(Calendar createdAt, UUID taskId, Pageable pageable);
+
+    // Exports read one chunk at a time by keyset, so no query keeps a result set open between chunks
+
+    @QueryHints(@QueryHint(name = HINT_READONLY, value = "true"))
+    @Query("select t from Task t join fetch t.owner where t.createdAt <= ?1 and (t.createdAt < ?1 or t.taskId < ?2) " +
+            "order by t.createdAt desc, t.taskId desc")
+    public List<Task> findExportChunk(Calendar createdAt, UUID taskId, Pageable pageable);
+
+    @QueryHints(@QueryHint(name = HINT_READONLY, value = "true"))
+    @Query("select t from Task t join fetch t.owner where t.owner = ?1 " +
+            "and t.createdAt <= ?2 and (t.createdAt < ?2 or t.taskId < ?3) " +
+            "order by t.createdAt desc, t.taskId desc")
+    public List<Task> findExportChunkByOwner(User owner, Calendar createdAt, UUID taskId, Pageable pageable);
+
+    @Query("select t.taskId, g.name from Task t join t.tagEntities g where t.taskId in ?1 order by g.name asc")
+    public List<Object[]> findTagNamesByTaskIdIn(Collection<UUID> taskIds);
+
+    // Worked time of a task includes its logged sessions that are not compacted yet
+
+    @Query("select t, (select coalesce(sum(s.duration), 0) from WorkSession s " +
+            "where s.taskId = t.taskId and s.compacted = false) from Task t where t.taskId = ?1")
+    public List<Object[]> findWithSessionTimeByTaskId(UUID taskId);
+
+    // Compaction leaves the version and updatedAt alone, the task's worked time as read does not change
     @Modifying
-    @Query("update Task t set t.workedTime = ?1 where t.workedTime = ?2")
-    public void updateTaskWorkedTimeById(Integer workedTime, UUID id);
+    @Query("update Task t set t.workedTime = t.workedTime + ?2 where t.taskId = ?1")
+    public int addWorkedTime(UUID taskId, Long workedTime);
+
+    // Timer transitions are conditional updates, so concurrent clicks cannot log the same session twice.
+    // Stopping only logs a session, worked time is added when sessions are compacted
+
+    @Modifying(clearAutomatically = true)
+    @Query("update Task t set t.lastWorkStartAt = ?2, t.updatedAt = ?2, t.version = t.version + 1 " +
+            "where t.taskId = ?1 and t.lastWorkStartAt is null and t.isFinished = false")
+    public int startTask(UUID taskId, Calendar now);
+
+    @Modifying(clearAutomatically = true)
+    @Query("update Task t set t.lastWorkStartAt = ?3, t.updatedAt = ?3, t.version = t.version + 1 " +
+            "where t.owner = ?1 and t.taskId in ?2 and t.lastWorkStartAt is null and t.isFinished = false")
+    public int startTasks(User owner, Collection<UUID> taskIds, Calendar now);
+
+    @Modifying(clearAutomatically = true)
+    @Query("update Task t set t.lastWorkStartAt = null, t.updatedAt = ?3, t.version = t.version + 1 " +
+            "where t.taskId = ?1 and t.lastWorkStartAt = ?2 and t.isFinished = false")
+    public int stopTask(UUID taskId, Calendar startedAt, Calendar now);
+
+    @Modifying(clearAutomatically = true)
+    @Query("update Task t set t.lastWorkStartAt = null, t.updatedAt = ?3, t.version = t.version + 1 " +
+            "where t.owner = ?1 and t.taskId in ?2 and t.lastWorkStartAt is not null and t.isFinished = false")
+    public int stopTasks(User owner, Collection<UUID> taskIds, Calendar now);
+
+    @Modifying(clearAutomatically = true)
+    @Query("update Task t set t.isFinished = true, t.workedTime = t.workedTime + ?2, t.updatedAt = ?3, " +
+            "t.version = t.version + 1 " +
+            "where t.taskId = ?1 and t.lastWorkStartAt is null and t.isFinished = false")
+    public int finishIdleTask(UUID taskId, Long folded, Calendar now);
 
+    @Modifying(clearAutomatically = true)
+    @Query("update Task t set t.isFinished = true, t.workedTime = t.workedTime + ?3, t.lastWorkStartAt = null, " +
+            "t.updatedAt = ?4, t.version = t.version + 1 " +
+            "where t.taskId = ?1 and t.lastWorkStartAt = ?2 and t.isFinished = false")
+    public int finishRunningTask(UUID taskId, Calendar startedAt, Long folded, Calendar now);
 }
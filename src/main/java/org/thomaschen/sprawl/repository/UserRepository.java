@@ -1,11 +1,32 @@
 package org.thomaschen.sprawl.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.thomaschen.sprawl.model.TasksVersion;
 import org.thomaschen.sprawl.model.User;
 
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 public interface UserRepository extends JpaRepository<User, UUID> {
     public Optional<User> findByUsername(String username);
+
+    @Query("select new org.thomaschen.sprawl.model.TasksVersion(u.tasksVersion, u.tasksModifiedAt) " +
+            "from User u where u.userId = ?1")
+    public Optional<TasksVersion> findTasksVersion(UUID userId);
+
+    @Query("select u.userId, u.tasksVersion from User u where u.userId in ?1")
+    public List<Object[]> findTasksVersions(Collection<UUID> userIds);
+
+    @Modifying
+    @Query("update User u set u.tasksVersion = u.tasksVersion + 1, u.tasksModifiedAt = ?2 where u.userId = ?1")
+    public int touchTasks(UUID userId, Calendar now);
+
+    @Modifying
+    @Query("update User u set u.tokenGeneration = u.tokenGeneration + 1 where u.userId = ?1")
+    public int revokeTokens(UUID userId);
 }
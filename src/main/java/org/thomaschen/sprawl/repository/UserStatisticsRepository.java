@@ -0,0 +1,22 @@
+package org.thomaschen.sprawl.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.stereotype.Repository;
+import org.thomaschen.sprawl.model.User;
+import org.thomaschen.sprawl.model.UserStatistics;
+
+import javax.persistence.LockModeType;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface UserStatisticsRepository extends JpaRepository<UserStatistics, UUID> {
+
+    public Optional<UserStatistics> findByOwner(User owner);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    public Optional<UserStatistics> findForUpdateByOwner(User owner);
+
+    public void deleteByOwner(User owner);
+}
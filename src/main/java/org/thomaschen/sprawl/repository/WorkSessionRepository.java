@@ -0,0 +1,46 @@
+package org.thomaschen.sprawl.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.thomaschen.sprawl.model.WorkSession;
+
+import javax.persistence.LockModeType;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface WorkSessionRepository extends JpaRepository<WorkSession, UUID> {
+
+    public List<WorkSession> findByTaskIdOrderByStartedAtAsc(UUID taskId);
+
+    @Query("select s.taskId, sum(s.duration) from WorkSession s " +
+            "where s.taskId in ?1 and s.compacted = false group by s.taskId")
+    public List<Object[]> sumUncompactedByTaskIdIn(Collection<UUID> taskIds);
+
+    // Compaction locks the sessions it folds, so two folds of the same session cannot both commit
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select s from WorkSession s where s.taskId in ?1 and s.compacted = false")
+    public List<WorkSession> findUncompactedForUpdateByTaskIdIn(Collection<UUID> taskIds);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select s from WorkSession s where s.compacted = false order by s.stoppedAt asc")
+    public List<WorkSession> findUncompactedForUpdate(Pageable pageable);
+
+    @Modifying
+    @Query("update WorkSession s set s.compacted = true where s.sessionId in ?1")
+    public int markCompacted(Collection<UUID> sessionIds);
+
+    @Modifying
+    @Query("delete from WorkSession s where s.taskId in ?1")
+    public int deleteByTaskIdIn(Collection<UUID> taskIds);
+
+    @Modifying
+    @Query("delete from WorkSession s where s.ownerId = ?1")
+    public int deleteByOwnerId(UUID ownerId);
+}
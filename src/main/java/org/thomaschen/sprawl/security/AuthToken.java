@@ -0,0 +1,27 @@
+package org.thomaschen.sprawl.security;
+
+/**
+ * Signed bearer token issued in exchange for Basic credentials.
+ */
+public class AuthToken {
+
+    private final String token;
+    private final long expiresAt;
+
+    public AuthToken(String token, long expiresAt) {
+        this.token = token;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * Retrieve the expiry of the token.
+     * @return seconds since 1970-01-01 UTC
+     */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+}
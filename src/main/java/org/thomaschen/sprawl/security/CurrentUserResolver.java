@@ -0,0 +1,109 @@
+package org.thomaschen.sprawl.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.thomaschen.sprawl.exception.ResourceNotFoundException;
+import org.thomaschen.sprawl.model.User;
+import org.thomaschen.sprawl.repository.UserRepository;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves the authenticated User. The result is memoized for the current request and kept in a
+ * bounded cache keyed by username, so repeated lookups within and across requests skip the database.
+ */
+@Component
+public class CurrentUserResolver {
+
+    private static final String REQUEST_ATTRIBUTE = CurrentUserResolver.class.getName() + ".user";
+
+    private final UserRepository userRepository;
+
+    private final Cache<String, User> users;
+
+    @Autowired
+    public CurrentUserResolver(UserRepository userRepository,
+                               @Value("${sprawl.user-cache.max-size:10000}") long maxSize,
+                               @Value("${sprawl.user-cache.ttl-seconds:60}") long ttlSeconds) {
+        this.userRepository = userRepository;
+        this.users = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * Retrieve the username of the authenticated principal.
+     * @return the username
+     */
+    public static String getUsername() {
+        Object principal = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        if (principal instanceof UserDetails) {
+            return ((UserDetails) principal).getUsername();
+        } else {
+            return principal.toString();
+        }
+    }
+
+    /**
+     * Retrieve the authenticated user. The returned entity is detached.
+     * @return the user
+     */
+    public User getUser() {
+        String username = getUsername();
+
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null) {
+            Object memoized = attributes.getAttribute(REQUEST_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+            if (memoized instanceof User && username.equals(((User) memoized).getUsername())) {
+                return (User) memoized;
+            }
+        }
+
+        User user = this.findUser(username);
+        if (user == null) {
+            throw new ResourceNotFoundException("User", "username", username);
+        }
+
+        if (attributes != null) {
+            attributes.setAttribute(REQUEST_ATTRIBUTE, user, RequestAttributes.SCOPE_REQUEST);
+        }
+        return user;
+    }
+
+    /**
+     * Retrieve a user by username through the cache. The returned entity is detached.
+     * @param username the username
+     * @return the user, or null if there is none
+     */
+    public User findUser(String username) {
+        return users.get(username, name -> userRepository.findByUsername(name).orElse(null));
+    }
+
+    /**
+     * Drop a user from the cache after their details change or they are deleted, once the current
+     * transaction, if any, commits so the old row cannot be cached again meanwhile.
+     * @param username the username of the user
+     */
+    public void evict(String username) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    users.invalidate(username);
+                }
+            });
+        } else {
+            users.invalidate(username);
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package org.thomaschen.sprawl.security;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
@@ -10,17 +12,14 @@ import org.springframework.security.config.annotation.web.configuration.WebSecur
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
-import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
-import org.thomaschen.sprawl.model.User;
-import org.thomaschen.sprawl.repository.UserRepository;
 
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.List;
-import java.util.Properties;
 
 @Configuration
 @EnableWebSecurity
@@ -28,19 +27,22 @@ public class SprawlDataWebSecurityConfiguration extends WebSecurityConfigurerAda
     private static String REALM="SPRAWL";
 
     @Autowired
-    UserRepository userRepository;
+    TokenService tokenService;
 
     @Autowired
-    public void configureGlobalSecurity(AuthenticationManagerBuilder auth) throws Exception {
-        List<User> users = userRepository.findAll();
+    SprawlUserDetailsService sprawlUserDetailsService;
+
+    @Value("${sprawl.auth.user-cache.max-size:10000}")
+    long userCacheMaxSize;
 
-        for (User user : users) {
-            auth.inMemoryAuthentication().withUser(user.getUsername()).password(passwordEncoder().encode(user.getPassword())).roles(Role.USER.getText());
-        }
+    @Value("${sprawl.auth.user-cache.ttl-seconds:300}")
+    long userCacheTtlSeconds;
 
+    @Autowired
+    public void configureGlobalSecurity(AuthenticationManagerBuilder auth) throws Exception {
         auth.inMemoryAuthentication().withUser("admin1").password(passwordEncoder().encode("abc123")).roles(Role.ADMIN.getText());
 
-        auth.userDetailsService(inMemoryUserDetailsManager());
+        auth.authenticationProvider(daoAuthenticationProvider());
     }
 
     @Override
@@ -53,6 +55,8 @@ public class SprawlDataWebSecurityConfiguration extends WebSecurityConfigurerAda
                 //.antMatchers(HttpMethod.OPTIONS, "/**").permitAll()
                     .antMatchers("/api/admin/**").hasRole("ADMIN")
                     .antMatchers("/api/user/register").permitAll()
+                    .antMatchers("/actuator/health").permitAll()
+                    .antMatchers("/actuator/**").hasRole("ADMIN")
                     .anyRequest().authenticated()
                     .and()
                 .httpBasic()
@@ -62,6 +66,7 @@ public class SprawlDataWebSecurityConfiguration extends WebSecurityConfigurerAda
                 .sessionManagement()
                     .sessionCreationPolicy(SessionCreationPolicy.STATELESS)
                     .and()
+                .addFilterBefore(new TokenAuthenticationFilter(tokenService), BasicAuthenticationFilter.class)
                 .csrf().disable();
     }
 
@@ -77,12 +82,18 @@ public class SprawlDataWebSecurityConfiguration extends WebSecurityConfigurerAda
     }
 
     @Bean
-    public InMemoryUserDetailsManager inMemoryUserDetailsManager() {
-        final Properties users = new Properties();
-        users.put("admin", "abc123,ADMIN,enabled");
-        return new InMemoryUserDetailsManager(users);
+    public UserCache userCache() {
+        return new CaffeineUserCache(userCacheMaxSize, userCacheTtlSeconds);
     }
 
+    @Bean
+    public DaoAuthenticationProvider daoAuthenticationProvider() {
+        DaoAuthenticationProvider provider = new DaoAuthenticationProvider();
+        provider.setUserDetailsService(sprawlUserDetailsService);
+        provider.setPasswordEncoder(passwordEncoder());
+        provider.setUserCache(userCache());
+        return provider;
+    }
 
     @Bean
     CorsConfigurationSource corsConfigurationSource() {
@@ -95,6 +106,8 @@ public class SprawlDataWebSecurityConfiguration extends WebSecurityConfigurerAda
         configuration.setAllowCredentials(true);
         configuration.setAllowedHeaders(Collections.unmodifiableList(
                 Arrays.asList("Authorization", "Cache-Control", "Content-Type")));
+        configuration.setExposedHeaders(Collections.unmodifiableList(
+                Arrays.asList("X-Next-Cursor", "Retry-After")));
         source.registerCorsConfiguration("/**", configuration);
         return source;
     }
@@ -0,0 +1,50 @@
+package org.thomaschen.sprawl.security;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+import org.thomaschen.sprawl.model.User;
+import org.thomaschen.sprawl.repository.UserRepository;
+
+import java.util.regex.Pattern;
+
+/**
+ * Loads users on demand from the UserRepository, so every node sees every registered user
+ * without preloading them at startup.
+ */
+@Component
+public class SprawlUserDetailsService implements UserDetailsService {
+
+    private static final Pattern BCRYPT_PATTERN = Pattern.compile("\\A\\$2(a|y|b)?\\$\\d\\d\\$[./0-9A-Za-z]{53}");
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    PasswordEncoder passwordEncoder;
+
+    @Override
+    public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        User user = userRepository.findByUsername(username)
+                .orElseThrow(() -> new UsernameNotFoundException(username));
+
+        if (user.getPassword() == null) {
+            throw new UsernameNotFoundException(username);
+        }
+
+        // Accounts registered before passwords were hashed at rest are upgraded on first use
+        if (!BCRYPT_PATTERN.matcher(user.getPassword()).matches()) {
+            user.setPassword(passwordEncoder.encode(user.getPassword()));
+            user = userRepository.save(user);
+        }
+
+        Role role = user.getRole() == null ? Role.USER : user.getRole();
+        return org.springframework.security.core.userdetails.User.withUsername(user.getUsername())
+                .password(user.getPassword())
+                .roles(role.getText())
+                .build();
+    }
+}
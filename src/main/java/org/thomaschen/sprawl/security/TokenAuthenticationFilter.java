@@ -0,0 +1,56 @@
+package org.thomaschen.sprawl.security;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Authenticates requests carrying an {@code Authorization: Bearer} token issued by {@link TokenService},
+ * or connections to the task event stream carrying an event token in the {@code token} query parameter.
+ * Requests without either fall through to HTTP Basic. Logins are never authenticated by token, so a
+ * token can only be obtained with the password and cannot be renewed past its expiry.
+ */
+public class TokenAuthenticationFilter extends OncePerRequestFilter {
+
+    private static final String PREFIX = "Bearer ";
+
+    private static final String LOGIN_PATH = "/api/auth/login";
+    private static final String EVENTS_PATH = "/api/task/events";
+    private static final String EVENTS_PARAMETER = "token";
+
+    private final TokenService tokenService;
+
+    public TokenAuthenticationFilter(TokenService tokenService) {
+        this.tokenService = tokenService;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getRequestURI().equals(request.getContextPath() + LOGIN_PATH);
+    }
+
+    @Override
+    protected void doFilterInternal(final HttpServletRequest request,
+                                    final HttpServletResponse response,
+                                    final FilterChain chain) throws ServletException, IOException {
+        Authentication authentication = null;
+        String header = request.getHeader("Authorization");
+        if (header != null && header.startsWith(PREFIX)) {
+            authentication = tokenService.verify(header.substring(PREFIX.length()).trim());
+        } else if (request.getParameter(EVENTS_PARAMETER) != null
+                && request.getRequestURI().equals(request.getContextPath() + EVENTS_PATH)) {
+            authentication = tokenService.verifyEventsToken(request.getParameter(EVENTS_PARAMETER));
+        }
+        if (authentication != null) {
+            SecurityContextHolder.getContext().setAuthentication(authentication);
+        }
+
+        chain.doFilter(request, response);
+    }
+}
@@ -0,0 +1,180 @@
+package org.thomaschen.sprawl.security;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.Profiles;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.stereotype.Component;
+import org.thomaschen.sprawl.model.User;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Issues and verifies HMAC-SHA256 signed bearer tokens, so authenticated requests can skip
+ * the BCrypt check that HTTP Basic performs on every call.
+ *
+ * A token is {@code base64url(expiresAt:generation:scope:username).base64url(signature)}. API tokens are
+ * sent in the Authorization header; short-lived event tokens only open the task event stream, which browsers
+ * connect to without custom headers, so they travel in the query string. Verification checks
+ * the generation against the user's current one and grants the user's current role, so changing the
+ * password or deleting the user revokes their tokens and role changes apply to them. Users are read
+ * through the CurrentUserResolver cache, so other nodes see such changes within the cache TTL.
+ */
+@Component
+public class TokenService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenService.class);
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final String API_SCOPE = "api";
+    private static final String EVENTS_SCOPE = "events";
+
+    private final CurrentUserResolver currentUserResolver;
+    private final long ttlSeconds;
+    private final long eventsTtlSeconds;
+    private final ThreadLocal<Mac> macs;
+
+    @Autowired
+    public TokenService(CurrentUserResolver currentUserResolver,
+                        Environment environment,
+                        @Value("${sprawl.auth.token-secret:}") String secret,
+                        @Value("${sprawl.auth.token-ttl-seconds:3600}") long ttlSeconds,
+                        @Value("${sprawl.auth.events-token-ttl-seconds:60}") long eventsTtlSeconds) {
+        byte[] keyBytes;
+        if (secret.isEmpty()) {
+            if (!environment.acceptsProfiles(Profiles.of("dev", "loadtest"))) {
+                throw new IllegalStateException("sprawl.auth.token-secret must be set outside the dev and loadtest profiles");
+            }
+            // Without a shared secret tokens are only valid on this node until it restarts
+            keyBytes = new byte[32];
+            new SecureRandom().nextBytes(keyBytes);
+            logger.warn("sprawl.auth.token-secret is not set, using a random per-process key");
+        } else {
+            keyBytes = secret.getBytes(StandardCharsets.UTF_8);
+        }
+
+        SecretKeySpec key = new SecretKeySpec(keyBytes, ALGORITHM);
+        this.currentUserResolver = currentUserResolver;
+        this.ttlSeconds = ttlSeconds;
+        this.eventsTtlSeconds = eventsTtlSeconds;
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException gse) {
+                throw new IllegalStateException(gse);
+            }
+        });
+    }
+
+    /**
+     * Issue a token for an authenticated user.
+     * @param user the user
+     * @return the signed token and its expiry
+     */
+    public AuthToken issue(User user) {
+        return this.issue(user, API_SCOPE, ttlSeconds);
+    }
+
+    /**
+     * Issue a short-lived token that only opens the task event stream.
+     * @param user the user
+     * @return the signed token and its expiry
+     */
+    public AuthToken issueEventsToken(User user) {
+        return this.issue(user, EVENTS_SCOPE, eventsTtlSeconds);
+    }
+
+    /**
+     * Verify a token and rebuild the authentication it was issued for.
+     * @param token the token presented by the client
+     * @return the authentication, or null if the token is malformed, forged, expired, revoked or an event token
+     */
+    public Authentication verify(String token) {
+        return this.verify(token, API_SCOPE);
+    }
+
+    /**
+     * Verify an event token presented to the task event stream.
+     * @param token the token presented by the client
+     * @return the authentication, or null if the token is malformed, forged, expired, revoked or an API token
+     */
+    public Authentication verifyEventsToken(String token) {
+        return this.verify(token, EVENTS_SCOPE);
+    }
+
+    private AuthToken issue(User user, String scope, long ttl) {
+        long expiresAt = System.currentTimeMillis() / 1000 + ttl;
+
+        String payload = expiresAt + ":" + user.getTokenGeneration() + ":" + scope + ":" + user.getUsername();
+        byte[] payloadBytes = payload.getBytes(StandardCharsets.UTF_8);
+
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        String token = encoder.encodeToString(payloadBytes) + "." + encoder.encodeToString(this.sign(payloadBytes));
+        return new AuthToken(token, expiresAt);
+    }
+
+    private Authentication verify(String token, String scope) {
+        int separator = token.indexOf('.');
+        if (separator < 0) {
+            return null;
+        }
+
+        byte[] payloadBytes;
+        byte[] signature;
+        try {
+            Base64.Decoder decoder = Base64.getUrlDecoder();
+            payloadBytes = decoder.decode(token.substring(0, separator));
+            signature = decoder.decode(token.substring(separator + 1));
+        } catch (IllegalArgumentException iae) {
+            return null;
+        }
+
+        if (!MessageDigest.isEqual(this.sign(payloadBytes), signature)) {
+            return null;
+        }
+
+        String[] fields = new String(payloadBytes, StandardCharsets.UTF_8).split(":", 4);
+        if (fields.length != 4 || !scope.equals(fields[2])) {
+            return null;
+        }
+
+        long expiresAt;
+        long generation;
+        try {
+            expiresAt = Long.parseLong(fields[0]);
+            generation = Long.parseLong(fields[1]);
+        } catch (NumberFormatException nfe) {
+            return null;
+        }
+        if (expiresAt < System.currentTimeMillis() / 1000) {
+            return null;
+        }
+
+        User user = currentUserResolver.findUser(fields[3]);
+        if (user == null || user.getTokenGeneration() != generation) {
+            return null;
+        }
+
+        Role role = user.getRole() == null ? Role.USER : user.getRole();
+        return new UsernamePasswordAuthenticationToken(user.getUsername(), null,
+                AuthorityUtils.createAuthorityList("ROLE_" + role.getText()));
+    }
+
+    private byte[] sign(byte[] payload) {
+        return macs.get().doFinal(payload);
+    }
+}
@@ -0,0 +1,194 @@
+package org.thomaschen.sprawl.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.thomaschen.sprawl.model.DailyStatistics;
+import org.thomaschen.sprawl.model.TasksVersion;
+import org.thomaschen.sprawl.model.User;
+import org.thomaschen.sprawl.repository.UserRepository;
+import org.thomaschen.sprawl.stats.Dashboard;
+import org.thomaschen.sprawl.stats.Resolution;
+
+import javax.annotation.PostConstruct;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TimeZone;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Precomputes the default statistics views of recently active users, so their next dashboard load,
+ * including the first one of a day, is answered from memory. Precomputation runs on the statistics
+ * executor, only while it has no requests waiting, with a bounded number of users in flight and a time
+ * budget per run. Cached views are checked against the tasks version on every read and never served stale.
+ */
+@Service
+public class DashboardService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DashboardService.class);
+
+    @Autowired
+    StatisticsService statisticsService;
+
+    @Autowired
+    TaskVersionService taskVersionService;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    ThreadPoolTaskExecutor statisticsExecutor;
+
+    @Value("${sprawl.dashboard.active-days:7}")
+    long activeDays;
+
+    @Value("${sprawl.dashboard.concurrency:2}")
+    int concurrency;
+
+    @Value("${sprawl.dashboard.max-users-per-run:200}")
+    int maxUsersPerRun;
+
+    @Value("${sprawl.dashboard.budget-ms:60000}")
+    long budgetMs;
+
+    @Value("${sprawl.dashboard.cache-size:10000}")
+    long cacheSize;
+
+    @Value("${sprawl.dashboard.max-tracked-users:100000}")
+    long maxTrackedUsers;
+
+    // Last request time of recently active users, forgotten once inactive for activeDays
+    private Cache<UUID, Long> lastSeen;
+
+    private Cache<UUID, Dashboard> dashboards;
+
+    private Semaphore inFlight;
+
+    @PostConstruct
+    void init() {
+        this.lastSeen = Caffeine.newBuilder()
+                .maximumSize(maxTrackedUsers)
+                .expireAfterWrite(activeDays, TimeUnit.DAYS)
+                .build();
+        this.dashboards = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(1, TimeUnit.DAYS)
+                .build();
+        this.inFlight = new Semaphore(concurrency);
+    }
+
+    /**
+     * Marks a user as active, making their dashboard eligible for precomputation.
+     * @param user the user making a request
+     */
+    public void recordActivity(User user) {
+        lastSeen.put(user.getUserId(), System.currentTimeMillis());
+    }
+
+    /**
+     * Reads a user's precomputed views if they still match the user's tasks.
+     * @param user the user
+     * @return the views, or null if none are cached or they are out of date
+     */
+    public Dashboard getDashboard(User user) {
+        Dashboard dashboard = dashboards.getIfPresent(user.getUserId());
+        if (dashboard == null) {
+            return null;
+        }
+
+        TasksVersion version = taskVersionService.getVersion(user);
+        return dashboard.isCurrent(version.getVersion(), today()) ? dashboard : null;
+    }
+
+    /**
+     * Refreshes out of date views of active users, most recently active first. Stops once the run's
+     * user count or time budget is spent, or as soon as statistics requests start queueing.
+     */
+    @Scheduled(fixedDelayString = "${sprawl.dashboard.interval-ms:300000}",
+            initialDelayString = "${sprawl.dashboard.initial-delay-ms:60000}")
+    public void precompute() {
+        long deadline = System.currentTimeMillis() + budgetMs;
+        long today = today();
+
+        List<UUID> users = lastSeen.asMap().entrySet().stream()
+                .sorted(Map.Entry.<UUID, Long>comparingByValue().reversed())
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+
+        int submitted = 0;
+        for (UUID userId : users) {
+            if (submitted >= maxUsersPerRun || !this.isIdle()) {
+                break;
+            }
+
+            Optional<TasksVersion> version = userRepository.findTasksVersion(userId);
+            if (!version.isPresent()) {
+                lastSeen.invalidate(userId);
+                dashboards.invalidate(userId);
+                continue;
+            }
+            Dashboard cached = dashboards.getIfPresent(userId);
+            if (cached != null && cached.isCurrent(version.get().getVersion(), today)) {
+                continue;
+            }
+
+            try {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0 || !inFlight.tryAcquire(remaining, TimeUnit.MILLISECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            try {
+                statisticsExecutor.execute(() -> {
+                    try {
+                        userRepository.findById(userId)
+                                .ifPresent(user -> this.compute(user, version.get().getVersion(), today));
+                    } catch (RuntimeException e) {
+                        logger.warn("Could not precompute dashboard of user {}", userId, e);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+                submitted++;
+            } catch (TaskRejectedException tre) {
+                inFlight.release();
+                break;
+            }
+        }
+    }
+
+    // The version is read before computing, so a change made meanwhile leaves the entry out of date, never wrong
+    private void compute(User user, long tasksVersion, long today) {
+        Dashboard dashboard = new Dashboard(tasksVersion, today,
+                statisticsService.getAggregateStatistics(user),
+                statisticsService.getTimeSeriesEstimation(user, null, null, Resolution.HOUR),
+                statisticsService.getTimeSeriesTotalTasks(user, null, null, Resolution.DAY));
+        dashboards.put(user.getUserId(), dashboard);
+    }
+
+    // Requests waiting for a statistics thread take precedence over precomputation
+    private boolean isIdle() {
+        return statisticsExecutor.getThreadPoolExecutor().getQueue().isEmpty()
+                && statisticsExecutor.getActiveCount() < statisticsExecutor.getMaxPoolSize();
+    }
+
+    private static long today() {
+        return DailyStatistics.getEpochDay(Calendar.getInstance(TimeZone.getTimeZone("UTC")));
+    }
+}
@@ -0,0 +1,137 @@
+package org.thomaschen.sprawl.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.thomaschen.sprawl.model.Task;
+import org.thomaschen.sprawl.repository.TaskRepository;
+
+import java.nio.ByteBuffer;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.*;
+
+/**
+ * Moves tags from the former task_tags element collection into the normalized tag tables.
+ * Runs once at startup: the legacy table is renamed to task_tags_legacy when done. The legacy table
+ * is read in chunks of tasks in task id order, so only one chunk is held in memory at a time.
+ * Nodes starting together take turns through a MySQL named lock; whichever gets it first migrates,
+ * the others find the legacy table already renamed once they hold the lock and skip the migration.
+ */
+@Component
+public class LegacyTagMigration implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(LegacyTagMigration.class);
+
+    private static final String LEGACY_TABLE = "task_tags";
+    private static final int CHUNK_SIZE = 500;
+    private static final String LOCK_NAME = "sprawl.legacy-tag-migration";
+    private static final int LOCK_TIMEOUT_SECONDS = 3600;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    TaskRepository taskRepository;
+
+    @Autowired
+    TagService tagService;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!this.legacyTableExists()) {
+            return;
+        }
+
+        // The lock belongs to the session of the connection held here, the migration itself runs on others
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement lock = connection.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+                lock.setString(1, LOCK_NAME);
+                lock.setInt(2, LOCK_TIMEOUT_SECONDS);
+                try (ResultSet acquired = lock.executeQuery()) {
+                    if (!acquired.next() || acquired.getInt(1) != 1) {
+                        throw new IllegalStateException("Could not acquire the lock " + LOCK_NAME);
+                    }
+                }
+            }
+            try {
+                if (this.legacyTableExists()) {
+                    this.migrate();
+                }
+            } finally {
+                try (PreparedStatement release = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+                    release.setString(1, LOCK_NAME);
+                    release.executeQuery().close();
+                }
+            }
+            return null;
+        });
+    }
+
+    private void migrate() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        byte[] after = new byte[16];
+        long migrated = 0;
+        while (true) {
+            // Task ids are compared as the raw BINARY(16) values they are stored and ordered by
+            List<byte[]> chunk = jdbcTemplate.queryForList("SELECT DISTINCT task_task_id FROM " + LEGACY_TABLE +
+                    " WHERE task_task_id > ? ORDER BY task_task_id LIMIT " + CHUNK_SIZE, byte[].class, after);
+            if (chunk.isEmpty()) {
+                break;
+            }
+            byte[] last = chunk.get(chunk.size() - 1);
+
+            Map<UUID, List<String>> legacyTags = new HashMap<>();
+            jdbcTemplate.query("SELECT task_task_id, tags FROM " + LEGACY_TABLE +
+                    " WHERE task_task_id > ? AND task_task_id <= ?", (ResultSet rs) -> {
+                UUID taskId = toUuid(rs.getBytes(1));
+                legacyTags.computeIfAbsent(taskId, id -> new ArrayList<>()).add(rs.getString(2));
+            }, after, last);
+
+            transaction.execute(status -> {
+                for (Task task : taskRepository.findAllById(legacyTags.keySet())) {
+                    if (task.getTagEntities().isEmpty()) {
+                        task.setTags(legacyTags.get(task.getTaskId()));
+                        tagService.applyTags(task);
+                    }
+                }
+                return null;
+            });
+
+            migrated += legacyTags.size();
+            after = last;
+        }
+
+        jdbcTemplate.execute("ALTER TABLE " + LEGACY_TABLE + " RENAME TO " + LEGACY_TABLE + "_legacy");
+        logger.info("Migrated tags of {} tasks from {}", migrated, LEGACY_TABLE);
+    }
+
+    private boolean legacyTableExists() {
+        return jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            try (ResultSet tables = connection.getMetaData()
+                    .getTables(connection.getCatalog(), null, "%", new String[]{"TABLE"})) {
+                while (tables.next()) {
+                    if (LEGACY_TABLE.equalsIgnoreCase(tables.getString("TABLE_NAME"))) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        });
+    }
+
+    private static UUID toUuid(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+}
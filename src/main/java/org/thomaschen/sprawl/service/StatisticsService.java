@@ -0,0 +1,601 @@
+package org.thomaschen.sprawl.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.thomaschen.sprawl.metrics.StatisticsMetrics;
+import org.thomaschen.sprawl.model.DailyStatistics;
+import org.thomaschen.sprawl.model.HourlyStatistics;
+import org.thomaschen.sprawl.model.Task;
+import org.thomaschen.sprawl.model.User;
+import org.thomaschen.sprawl.model.UserStatistics;
+import org.thomaschen.sprawl.repository.DailyStatisticsRepository;
+import org.thomaschen.sprawl.repository.HourlyStatisticsRepository;
+import org.thomaschen.sprawl.repository.TaskRepository;
+import org.thomaschen.sprawl.repository.UserStatisticsRepository;
+import org.thomaschen.sprawl.stats.AggregateStatistics;
+import org.thomaschen.sprawl.stats.DataPoint;
+import org.thomaschen.sprawl.stats.Resolution;
+import org.thomaschen.sprawl.stats.RollupTotals;
+import org.thomaschen.sprawl.stats.TaskTotals;
+import org.thomaschen.sprawl.stats.TimeSeries;
+import org.thomaschen.sprawl.stats.StatisticsEngine;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.*;
+
+/**
+ * Maintains the persisted per-user statistics aggregate along with its daily and hourly rollups.
+ * Callers invoke the record methods inside the transaction that finishes or deletes a task so the
+ * aggregate never drifts. All writes of a user's statistics, rebuilds included, hold the lock on
+ * the user's statistics row, which is created before its first rebuild.
+ */
+@Service
+public class StatisticsService {
+
+    private static final double TOLERANCE = 1e-6;
+
+    private static final long MILLIS_PER_HOUR = 60L * 60 * 1000;
+
+    private static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+
+    @Autowired
+    TaskRepository taskRepository;
+
+    @Autowired
+    UserStatisticsRepository userStatisticsRepository;
+
+    @Autowired
+    DailyStatisticsRepository dailyStatisticsRepository;
+
+    @Autowired
+    HourlyStatisticsRepository hourlyStatisticsRepository;
+
+    @Autowired
+    StatisticsMetrics statisticsMetrics;
+
+    @PersistenceContext
+    EntityManager entityManager;
+
+    private final TransactionTemplate newTransaction;
+
+    // Statistics reads time out with the request waiting for them. The transaction timeout is applied to
+    // every query as javax.persistence.query.timeout, so the database stops a query nobody waits for anymore
+    private final TransactionTemplate readTransaction;
+
+    @Autowired
+    public StatisticsService(PlatformTransactionManager transactionManager,
+                             @Value("${sprawl.stats.timeout-ms:10000}") long timeoutMs) {
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setTimeout((int) Math.max(1, (timeoutMs + 999) / 1000));
+    }
+
+    /**
+     * Adds a task that has just been finished and flushed to its owner's statistics.
+     * @param task the finished task
+     */
+    @Transactional
+    public void recordFinished(Task task) {
+        this.recordFinished(Collections.singletonList(task));
+    }
+
+    /**
+     * Adds tasks of one owner that have just been finished and flushed to the owner's statistics.
+     * @param tasks the finished tasks
+     */
+    @Transactional
+    public void recordFinished(List<Task> tasks) {
+        if (tasks.isEmpty()) {
+            return;
+        }
+
+        User owner = tasks.get(0).getOwner();
+        UserStatistics stats = this.lockStatistics(owner);
+        if (!stats.isCurrent()) {
+            // First finish since statistics or their rollups were introduced, the scan already includes these tasks
+            this.rebuild(stats);
+            return;
+        }
+
+        Map<Long, DailyStatistics> days = new HashMap<>();
+        Map<Long, HourlyStatistics> hours = new HashMap<>();
+        for (Task task : tasks) {
+            long epochDay = DailyStatistics.getEpochDay(task.getUpdatedAt());
+            DailyStatistics day = days.get(epochDay);
+            if (day == null) {
+                day = dailyStatisticsRepository.findByOwnerAndEpochDay(owner, epochDay)
+                        .orElseGet(() -> new DailyStatistics(owner, epochDay));
+                days.put(epochDay, day);
+            }
+
+            long epochHour = HourlyStatistics.getEpochHour(task.getUpdatedAt());
+            HourlyStatistics hour = hours.get(epochHour);
+            if (hour == null) {
+                hour = hourlyStatisticsRepository.findByOwnerAndEpochHour(owner, epochHour)
+                        .orElseGet(() -> new HourlyStatistics(owner, epochHour));
+                hours.put(epochHour, hour);
+            }
+
+            stats.add(task, day.getTaskCount() == 0);
+            day.add(task);
+            hour.add(task);
+        }
+
+        userStatisticsRepository.save(stats);
+        dailyStatisticsRepository.saveAll(days.values());
+        hourlyStatisticsRepository.saveAll(hours.values());
+    }
+
+    /**
+     * Removes a finished task that is about to be deleted from its owner's statistics.
+     * @param task the task being deleted
+     */
+    @Transactional
+    public void recordRemoved(Task task) {
+        this.recordRemoved(Collections.singletonList(task));
+    }
+
+    /**
+     * Removes tasks of one owner that are about to be deleted from the owner's statistics.
+     * Unfinished tasks are ignored.
+     * @param tasks the tasks being deleted
+     */
+    @Transactional
+    public void recordRemoved(List<Task> tasks) {
+        List<Task> finished = new ArrayList<>();
+        for (Task task : tasks) {
+            if (task.getIsFinished()) {
+                finished.add(task);
+            }
+        }
+        if (finished.isEmpty()) {
+            return;
+        }
+
+        User owner = finished.get(0).getOwner();
+        // Checked without locking first, a locking read of a missing row would block its creation
+        if (!userStatisticsRepository.findByOwner(owner).isPresent()) {
+            return;
+        }
+
+        UserStatistics stats = this.lockStatistics(owner);
+        if (!stats.isCurrent()) {
+            // Rollups predate this layout, the next read rebuilds everything from the remaining history
+            return;
+        }
+
+        Map<Long, DailyStatistics> days = new HashMap<>();
+        Map<Long, HourlyStatistics> hours = new HashMap<>();
+        for (Task task : finished) {
+            long epochDay = DailyStatistics.getEpochDay(task.getUpdatedAt());
+            DailyStatistics day = days.get(epochDay);
+            if (day == null) {
+                day = dailyStatisticsRepository.findByOwnerAndEpochDay(owner, epochDay).orElse(null);
+                if (day != null) {
+                    days.put(epochDay, day);
+                }
+            }
+
+            long epochHour = HourlyStatistics.getEpochHour(task.getUpdatedAt());
+            HourlyStatistics hour = hours.get(epochHour);
+            if (hour == null) {
+                hour = hourlyStatisticsRepository.findByOwnerAndEpochHour(owner, epochHour).orElse(null);
+                if (hour != null) {
+                    hours.put(epochHour, hour);
+                }
+            }
+
+            if (day == null || day.getTaskCount() == 0 || hour == null || hour.getTaskCount() == 0) {
+                // Aggregate no longer matches the history, the next read rebuilds it along with the rollup rows
+                stats.invalidate();
+                userStatisticsRepository.save(stats);
+                return;
+            }
+
+            day.remove(task);
+            hour.remove(task);
+            stats.remove(task, day.getTaskCount() == 0);
+        }
+
+        userStatisticsRepository.save(stats);
+        for (DailyStatistics day : days.values()) {
+            if (day.getTaskCount() == 0) {
+                dailyStatisticsRepository.delete(day);
+            } else {
+                dailyStatisticsRepository.save(day);
+            }
+        }
+        for (HourlyStatistics hour : hours.values()) {
+            if (hour.getTaskCount() == 0) {
+                hourlyStatisticsRepository.delete(hour);
+            } else {
+                hourlyStatisticsRepository.save(hour);
+            }
+        }
+    }
+
+    /**
+     * Discards and recomputes a user's statistics from their full finished history.
+     * @param owner the user
+     * @return the recomputed statistics
+     */
+    @Transactional
+    public UserStatistics rebuild(User owner) {
+        return this.rebuild(this.lockStatistics(owner));
+    }
+
+    // Recompute locked statistics in place, keeping the row that serializes rebuilds
+    private UserStatistics rebuild(UserStatistics stats) {
+        return statisticsMetrics.time("rebuild", () -> {
+            User owner = stats.getOwner();
+            dailyStatisticsRepository.deleteByOwner(owner);
+            hourlyStatisticsRepository.deleteByOwner(owner);
+            // Deletes must reach the database before re-inserting rows under the same unique keys
+            dailyStatisticsRepository.flush();
+
+            stats.reset();
+            Map<Long, DailyStatistics> days = new LinkedHashMap<>();
+            Map<Long, HourlyStatistics> hours = new LinkedHashMap<>();
+            for (Task task : taskRepository.findByOwnerAndIsFinishedTrueOrderByUpdatedAtAsc(owner)) {
+                long epochDay = DailyStatistics.getEpochDay(task.getUpdatedAt());
+                DailyStatistics day = days.get(epochDay);
+                if (day == null) {
+                    day = new DailyStatistics(owner, epochDay);
+                    days.put(epochDay, day);
+                }
+
+                long epochHour = HourlyStatistics.getEpochHour(task.getUpdatedAt());
+                HourlyStatistics hour = hours.get(epochHour);
+                if (hour == null) {
+                    hour = new HourlyStatistics(owner, epochHour);
+                    hours.put(epochHour, hour);
+                }
+
+                stats.add(task, day.getTaskCount() == 0);
+                day.add(task);
+                hour.add(task);
+            }
+
+            dailyStatisticsRepository.saveAll(days.values());
+            hourlyStatisticsRepository.saveAll(hours.values());
+            return userStatisticsRepository.save(stats);
+        }, UserStatistics::getTotalTasks);
+    }
+
+    /**
+     * Removes all persisted statistics of a user.
+     * @param owner the user
+     */
+    @Transactional
+    public void deleteStatistics(User owner) {
+        userStatisticsRepository.deleteByOwner(owner);
+        dailyStatisticsRepository.deleteByOwner(owner);
+        hourlyStatisticsRepository.deleteByOwner(owner);
+        // Deletes must reach the database before re-inserting rows under the same unique keys
+        userStatisticsRepository.flush();
+    }
+
+    /**
+     * Reads a user's aggregate statistics, rebuilding them if they do not exist yet.
+     * @param owner the user
+     * @return the statistics
+     */
+    public AggregateStatistics getAggregateStatistics(User owner) {
+        return this.getAggregateStatistics(owner, null, null);
+    }
+
+    /**
+     * Reads a user's aggregate statistics over tasks finished in a time range. The unbounded range
+     * is served from the stored aggregate, any other range from aggregate queries over the tasks inside it.
+     * @param owner the user
+     * @param from inclusive start of the range, null for unbounded
+     * @param to exclusive end of the range, null for unbounded
+     * @return the statistics
+     */
+    public AggregateStatistics getAggregateStatistics(User owner, Calendar from, Calendar to) {
+        return statisticsMetrics.time("aggregate", () -> readTransaction.execute(status -> {
+            AggregateStatistics stats;
+            if (from == null && to == null) {
+                stats = this.getStoredStatistics(owner);
+            } else {
+                stats = this.getRangeStatistics(owner, getRangeStart(from), getRangeEnd(to));
+            }
+
+            return stats;
+        }), AggregateStatistics::getTotalTasks);
+    }
+
+    /**
+     * Computes the running average worked/expected ratio at the end of every bucket in which the user
+     * finished a task, read from the hourly rollup for hours and from the daily rollup otherwise.
+     * The average includes tasks finished before the range.
+     * @param owner the user
+     * @param from inclusive start of the range, aligned to the rollup read, null for unbounded
+     * @param to exclusive end of the range, aligned to the rollup read, null for unbounded
+     * @param resolution the bucket size
+     * @return the time series
+     */
+    public List<TimeSeries> getTimeSeriesEstimation(User owner, Calendar from, Calendar to, Resolution resolution) {
+        return statisticsMetrics.time("timeseries.estimation", () -> readTransaction.execute(status -> {
+            this.getCurrentStatistics(owner);
+
+            RollupTotals before;
+            List<RollupPoint> rows = new ArrayList<>();
+            if (resolution == Resolution.HOUR) {
+                long fromHour = floorBucket(from, MILLIS_PER_HOUR);
+                before = hourlyStatisticsRepository.sumBefore(owner, fromHour);
+                for (HourlyStatistics hour : hourlyStatisticsRepository.findRange(owner, fromHour, ceilBucket(to, MILLIS_PER_HOUR))) {
+                    rows.add(new RollupPoint(hour.getEpochHour() * MILLIS_PER_HOUR, hour.getTaskCount(), hour.getEstFactorSum()));
+                }
+            } else {
+                long fromDay = floorBucket(from, MILLIS_PER_DAY);
+                before = dailyStatisticsRepository.sumBefore(owner, fromDay);
+                for (DailyStatistics day : dailyStatisticsRepository.findRange(owner, fromDay, ceilBucket(to, MILLIS_PER_DAY))) {
+                    rows.add(new RollupPoint(day.getEpochDay() * MILLIS_PER_DAY, day.getTaskCount(), day.getEstFactorSum()));
+                }
+            }
+
+            long runTotal = before.getTaskCount();
+            double runSumEstFactor = before.getEstFactorSum();
+            Map<Long, Double> buckets = new LinkedHashMap<>();
+            for (RollupPoint row : rows) {
+                runTotal += row.taskCount;
+                runSumEstFactor += row.estFactorSum;
+                // The last row of a bucket leaves the average reached at its end
+                buckets.put(resolution.truncate(row.startMillis), runSumEstFactor / runTotal);
+            }
+
+            return Collections.singletonList(new TimeSeries("est. factor", toDataPoints(buckets, resolution)));
+        }), StatisticsService::countPoints);
+    }
+
+    /**
+     * Counts the tasks the user finished in every bucket with at least one finished task,
+     * read from the hourly rollup for hours and from the daily rollup otherwise.
+     * @param owner the user
+     * @param from inclusive start of the range, aligned to the rollup read, null for unbounded
+     * @param to exclusive end of the range, aligned to the rollup read, null for unbounded
+     * @param resolution the bucket size
+     * @return the time series
+     */
+    public List<TimeSeries> getTimeSeriesTotalTasks(User owner, Calendar from, Calendar to, Resolution resolution) {
+        return statisticsMetrics.time("timeseries.totaltasks", () -> readTransaction.execute(status -> {
+            this.getCurrentStatistics(owner);
+
+            Map<Long, Long> buckets = new LinkedHashMap<>();
+            if (resolution == Resolution.HOUR) {
+                long fromHour = floorBucket(from, MILLIS_PER_HOUR);
+                for (HourlyStatistics hour : hourlyStatisticsRepository.findRange(owner, fromHour, ceilBucket(to, MILLIS_PER_HOUR))) {
+                    buckets.merge(hour.getEpochHour() * MILLIS_PER_HOUR, hour.getTaskCount(), Long::sum);
+                }
+            } else {
+                long fromDay = floorBucket(from, MILLIS_PER_DAY);
+                for (DailyStatistics day : dailyStatisticsRepository.findRange(owner, fromDay, ceilBucket(to, MILLIS_PER_DAY))) {
+                    buckets.merge(resolution.truncate(day.getEpochDay() * MILLIS_PER_DAY), day.getTaskCount(), Long::sum);
+                }
+            }
+
+            return Collections.singletonList(new TimeSeries("tasks completed", toDataPoints(buckets, resolution)));
+        }), StatisticsService::countPoints);
+    }
+
+    /**
+     * Computes the running average worked/expected ratio of every tag used by more than one task finished
+     * in a time range. Without a resolution there is one point per task, as charted so far.
+     * @param owner the user
+     * @param from inclusive start of the range, null for unbounded
+     * @param to exclusive end of the range, null for unbounded
+     * @param resolution the bucket size, null for one point per task
+     * @return the time series
+     */
+    public List<TimeSeries> getTimeSeriesEstimationByTag(User owner, Calendar from, Calendar to, Resolution resolution) {
+        return statisticsMetrics.time("timeseries.estimation.tag", () -> readTransaction.execute(status -> {
+            List<Task> tasks = this.getFinishedTasks(owner, from, to);
+            if (resolution == null) {
+                return Task.getTimeSeriesEstimationByTag(tasks);
+            }
+
+            List<TimeSeries> completeStats = new ArrayList<>();
+            for (Map.Entry<String, List<Task>> entry : StatisticsEngine.groupByTag(tasks).entrySet()) {
+                if (entry.getValue().size() > 1) {
+                    completeStats.add(new TimeSeries(entry.getKey(),
+                            toDataPoints(StatisticsEngine.runningEstFactor(entry.getValue(), resolution), resolution)));
+                }
+            }
+
+            return completeStats;
+        }), StatisticsService::countPoints);
+    }
+
+    /**
+     * Compares a user's persisted statistics with a full scan of their finished history.
+     * @param owner the user
+     * @return whether both agree, along with both sets of statistics
+     */
+    public Map<String, Object> verify(User owner) {
+        return statisticsMetrics.time("verify", () -> readTransaction.execute(status -> {
+            AggregateStatistics stored = this.getStoredStatistics(owner);
+            AggregateStatistics scanned = StatisticsEngine.aggregate(
+                    taskRepository.findByOwnerAndIsFinishedTrueOrderByUpdatedAtAsc(owner));
+
+            boolean consistent = stored.getTotalTasks() == scanned.getTotalTasks()
+                    && stored.getTotalOver() == scanned.getTotalOver()
+                    && stored.getTotalUnder() == scanned.getTotalUnder()
+                    && matches(stored.getAvgTaskCompletionTime(), scanned.getAvgTaskCompletionTime())
+                    && matches(stored.getAvgEstFactor(), scanned.getAvgEstFactor())
+                    && matches(stored.getAvgDailyTaskTime(), scanned.getAvgDailyTaskTime())
+                    && matches(stored.getTodaysEstFactor(), scanned.getTodaysEstFactor())
+                    && matches(stored.getTodaysWorkedTime(), scanned.getTodaysWorkedTime());
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("consistent", consistent);
+            result.put("stored", stored);
+            result.put("scanned", scanned);
+            return result;
+        }), verification -> ((AggregateStatistics) verification.get("scanned")).getTotalTasks());
+    }
+
+    // Size of a time series result, as the number of points over all series
+    private static long countPoints(List<TimeSeries> series) {
+        long points = 0;
+        for (TimeSeries timeSeries : series) {
+            points += timeSeries.getSeries().size();
+        }
+        return points;
+    }
+
+    // Load the user's statistics, rebuilding them if they are missing or predate the current rollups.
+    // Concurrent readers wait for the first rebuild and then use its result
+    private UserStatistics getCurrentStatistics(User owner) {
+        return userStatisticsRepository.findByOwner(owner)
+                .filter(UserStatistics::isCurrent)
+                .orElseGet(() -> {
+                    UserStatistics stats = this.lockStatistics(owner);
+                    return stats.isCurrent() ? stats : this.rebuild(stats);
+                });
+    }
+
+    // Lock the user's statistics row until the transaction ends. A missing row is first created out of date,
+    // in its own transaction so concurrent creators collide there instead of in the caller's transaction
+    private UserStatistics lockStatistics(User owner) {
+        if (!userStatisticsRepository.findByOwner(owner).isPresent()) {
+            try {
+                newTransaction.execute(status -> {
+                    UserStatistics placeholder = new UserStatistics(owner);
+                    placeholder.invalidate();
+                    return userStatisticsRepository.saveAndFlush(placeholder);
+                });
+            } catch (DataIntegrityViolationException dive) {
+                // Created concurrently, locking it below waits for its rebuild
+            }
+        }
+
+        UserStatistics stats = userStatisticsRepository.findForUpdateByOwner(owner)
+                .orElseThrow(() -> new IllegalStateException("Statistics of user " + owner.getUserId() + " were deleted"));
+        // A copy read before the lock may predate a rebuild that committed meanwhile
+        entityManager.refresh(stats);
+        return stats;
+    }
+
+    private AggregateStatistics getStoredStatistics(User owner) {
+        UserStatistics stats = this.getCurrentStatistics(owner);
+        long today = DailyStatistics.getEpochDay(Calendar.getInstance(TimeZone.getTimeZone("UTC")));
+        DailyStatistics todays = dailyStatisticsRepository.findByOwnerAndEpochDay(owner, today)
+                .orElseGet(() -> new DailyStatistics(owner, today));
+
+        return new AggregateStatistics(
+                stats.getTotalTasks(),
+                stats.getTotalOver(),
+                stats.getTotalUnder(),
+                (double) stats.getTotalWorkedTime() / stats.getTotalTasks(),
+                stats.getTotalEstFactor() / stats.getTotalTasks(),
+                (double) stats.getTotalWorkedTime() / stats.getActiveDays(),
+                todays.getEstFactorSum() / todays.getTaskCount(),
+                (double) todays.getWorkedTime());
+    }
+
+    // Compute aggregate statistics over a bounded range without loading its tasks
+    private AggregateStatistics getRangeStatistics(User owner, Calendar start, Calendar end) {
+        TaskTotals totals = taskRepository.sumFinishedBetween(owner, start, end);
+
+        // Today's figures only cover the part of today inside the range
+        Calendar todayStart = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        todayStart.setTimeInMillis(DailyStatistics.getEpochDay(todayStart) * MILLIS_PER_DAY);
+        Calendar todayEnd = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        todayEnd.setTimeInMillis(todayStart.getTimeInMillis() + MILLIS_PER_DAY);
+        TaskTotals todays = todayStart.before(end) && start.before(todayEnd)
+                ? taskRepository.sumFinishedBetween(owner,
+                        start.after(todayStart) ? start : todayStart,
+                        end.before(todayEnd) ? end : todayEnd)
+                : new TaskTotals(null, null, null, null, null, null);
+
+        return new AggregateStatistics(
+                totals.getTaskCount(),
+                totals.getOverCount(),
+                totals.getUnderCount(),
+                (double) totals.getWorkedTime() / totals.getTaskCount(),
+                totals.getEstFactorSum() / totals.getTaskCount(),
+                (double) totals.getWorkedTime() / totals.getActiveDays(),
+                todays.getEstFactorSum() / todays.getTaskCount(),
+                (double) todays.getWorkedTime());
+    }
+
+    // Load the user's tasks finished in a time range
+    private List<Task> getFinishedTasks(User owner, Calendar from, Calendar to) {
+        if (from == null && to == null) {
+            return taskRepository.findByOwnerAndIsFinishedTrueOrderByUpdatedAtAsc(owner);
+        }
+
+        return taskRepository.findFinishedBetween(owner, getRangeStart(from), getRangeEnd(to));
+    }
+
+    // Substitute the earliest storable time for a missing start bound
+    private static Calendar getRangeStart(Calendar from) {
+        Calendar start = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        start.setTimeInMillis(from == null ? 0 : from.getTimeInMillis());
+        return start;
+    }
+
+    // Substitute the latest storable time for a missing end bound
+    private static Calendar getRangeEnd(Calendar to) {
+        Calendar end = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        if (to == null) {
+            end.clear();
+            end.set(9999, Calendar.DECEMBER, 31);
+        } else {
+            end.setTimeInMillis(to.getTimeInMillis());
+        }
+        return end;
+    }
+
+    // First bucket starting at or before a time, or the lowest bucket if unbounded. Callers pass bounds
+    // aligned to the rollup, see Resolution.getRollupMillis, so the range is never widened
+    private static long floorBucket(Calendar time, long millisPerBucket) {
+        return time == null ? Long.MIN_VALUE : Math.floorDiv(time.getTimeInMillis(), millisPerBucket);
+    }
+
+    // First bucket starting at or after a time, or past the highest bucket if unbounded
+    private static long ceilBucket(Calendar time, long millisPerBucket) {
+        return time == null ? Long.MAX_VALUE : -Math.floorDiv(-time.getTimeInMillis(), millisPerBucket);
+    }
+
+    // Label bucketed values by the start of their bucket
+    private static List<DataPoint> toDataPoints(Map<Long, ? extends Number> buckets, Resolution resolution) {
+        List<DataPoint> points = new ArrayList<>(buckets.size());
+        for (Map.Entry<Long, ? extends Number> bucket : buckets.entrySet()) {
+            points.add(new DataPoint(resolution.format(bucket.getKey()), bucket.getValue()));
+        }
+
+        return points;
+    }
+
+    /**
+     * Rollup row of either granularity, positioned at the start of its hour or day.
+     */
+    private static class RollupPoint {
+        private final long startMillis;
+        private final long taskCount;
+        private final double estFactorSum;
+
+        RollupPoint(long startMillis, long taskCount, double estFactorSum) {
+            this.startMillis = startMillis;
+            this.taskCount = taskCount;
+            this.estFactorSum = estFactorSum;
+        }
+    }
+
+    private static boolean matches(double stored, double scanned) {
+        if (Double.isNaN(stored) || Double.isNaN(scanned)) {
+            return Double.isNaN(stored) && Double.isNaN(scanned);
+        }
+        return Math.abs(stored - scanned) <= TOLERANCE * Math.max(1.0, Math.abs(scanned));
+    }
+}
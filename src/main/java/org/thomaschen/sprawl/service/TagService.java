@@ -0,0 +1,154 @@
+package org.thomaschen.sprawl.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.thomaschen.sprawl.model.Tag;
+import org.thomaschen.sprawl.model.Task;
+import org.thomaschen.sprawl.model.User;
+import org.thomaschen.sprawl.repository.TagRepository;
+
+import java.util.*;
+
+/**
+ * Resolves raw tag names into the owner's normalized tag entities, creating missing ones.
+ */
+@Service
+public class TagService {
+
+    @Autowired
+    TagRepository tagRepository;
+
+    private final TransactionTemplate newTransaction;
+
+    @Autowired
+    public TagService(PlatformTransactionManager transactionManager) {
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Replaces a task's tag entities with its pending tag names, if it has any.
+     * @param task the task, which must already have an owner
+     */
+    @Transactional
+    public void applyTags(Task task) {
+        if (task.getPendingTags() != null) {
+            task.setTagEntities(this.resolve(task.getOwner(), task.getPendingTags()));
+        }
+    }
+
+    /**
+     * Looks up or creates the tags with the given names for a user. Missing tags are created in their own
+     * transactions, so they remain if the caller's transaction rolls back, and a tag created concurrently
+     * by another request is reused.
+     * @param owner the user owning the tags
+     * @param tags the raw tag names
+     * @return the tags, in the order their names were given
+     */
+    @Transactional
+    public Set<Tag> resolve(User owner, Collection<String> tags) {
+        Set<String> names = new LinkedHashSet<>();
+        for (String tag : tags) {
+            String name = Tag.normalize(tag);
+            if (name != null) {
+                names.add(name);
+            }
+        }
+
+        Set<Tag> resolved = new LinkedHashSet<>();
+        if (names.isEmpty()) {
+            return resolved;
+        }
+
+        // MySQL's default collation compares names case-insensitively, so match them the same way here
+        Map<String, Tag> existing = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Tag tag : tagRepository.findByOwnerAndNameIn(owner, names)) {
+            existing.put(tag.getName(), tag);
+        }
+
+        List<String> missing = new ArrayList<>();
+        for (String name : names) {
+            if (!existing.containsKey(name)) {
+                missing.add(name);
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (String name : missing) {
+                this.create(owner, name);
+            }
+            for (Tag tag : tagRepository.findForShareByOwnerAndNameIn(owner, missing)) {
+                existing.put(tag.getName(), tag);
+            }
+        }
+
+        for (String name : names) {
+            Tag tag = existing.get(name);
+            if (tag == null) {
+                throw new IllegalStateException("Tag " + name + " of user " + owner.getUserId() + " was deleted");
+            }
+            resolved.add(tag);
+        }
+
+        return resolved;
+    }
+
+    // Insert a tag on its own, so losing the race on (owner, name) to a concurrent insert leaves the
+    // caller's transaction usable
+    private void create(User owner, String name) {
+        try {
+            newTransaction.execute(status -> tagRepository.saveAndFlush(new Tag(owner, name)));
+        } catch (DataIntegrityViolationException dive) {
+            // Created concurrently, or a case variant of a name created just before
+        }
+    }
+
+    /**
+     * Replaces the tag entities of several tasks of one owner, resolving all their names at once.
+     * @param tasks the tasks, which must already have the same owner
+     */
+    @Transactional
+    public void applyTags(List<Task> tasks) {
+        if (tasks.isEmpty()) {
+            return;
+        }
+
+        List<String> names = new ArrayList<>();
+        for (Task task : tasks) {
+            if (task.getPendingTags() != null) {
+                names.addAll(task.getPendingTags());
+            }
+        }
+
+        Map<String, Tag> resolved = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Tag tag : this.resolve(tasks.get(0).getOwner(), names)) {
+            resolved.put(tag.getName(), tag);
+        }
+
+        for (Task task : tasks) {
+            if (task.getPendingTags() != null) {
+                Set<Tag> tags = new LinkedHashSet<>();
+                for (String tag : task.getPendingTags()) {
+                    String name = Tag.normalize(tag);
+                    if (name != null) {
+                        tags.add(resolved.get(name));
+                    }
+                }
+                task.setTagEntities(tags);
+            }
+        }
+    }
+
+    /**
+     * Removes all tags of a user. Must run in the transaction that deletes the user's tasks.
+     * @param owner the user
+     */
+    @Transactional
+    public void deleteTags(User owner) {
+        tagRepository.deleteByOwner(owner);
+    }
+}
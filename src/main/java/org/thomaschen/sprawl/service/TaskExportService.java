@@ -0,0 +1,106 @@
+package org.thomaschen.sprawl.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.thomaschen.sprawl.model.Task;
+import org.thomaschen.sprawl.model.User;
+import org.thomaschen.sprawl.repository.TaskRepository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.UUID;
+import java.util.function.BiFunction;
+
+/**
+ * Writes Task listings as a JSON array while reading them one chunk at a time, newest first, so memory use
+ * does not depend on the number of tasks. Each chunk is a bounded keyset query, serialized and then detached
+ * before the next one is read.
+ * Worked time of unfinished tasks is exported as of the last work session compaction.
+ */
+@Service
+public class TaskExportService {
+
+    @Autowired
+    TaskRepository taskRepository;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @PersistenceContext
+    EntityManager entityManager;
+
+    @Value("${sprawl.export.chunk-size:500}")
+    int chunkSize;
+
+    /**
+     * Writes every Task of every user.
+     * @param out the response stream
+     */
+    @Transactional(readOnly = true)
+    public void writeAll(OutputStream out) throws IOException {
+        this.write((createdAt, taskId) -> taskRepository.findExportChunk(createdAt, taskId,
+                PageRequest.of(0, chunkSize)), out);
+    }
+
+    /**
+     * Writes every Task of a user.
+     * @param owner the user
+     * @param out the response stream
+     */
+    @Transactional(readOnly = true)
+    public void writeByOwner(User owner, OutputStream out) throws IOException {
+        this.write((createdAt, taskId) -> taskRepository.findExportChunkByOwner(owner, createdAt, taskId,
+                PageRequest.of(0, chunkSize)), out);
+    }
+
+    private void write(BiFunction<Calendar, UUID, List<Task>> chunks, OutputStream out) throws IOException {
+        // Values are flushed once per chunk rather than after each task
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        // The servlet container owns the response stream
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.writeStartArray();
+
+        // Start after the newest storable position
+        Calendar createdAt = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        createdAt.clear();
+        createdAt.set(9999, Calendar.DECEMBER, 31);
+        UUID taskId = new UUID(-1L, -1L);
+
+        List<Task> chunk;
+        do {
+            chunk = chunks.apply(createdAt, taskId);
+            if (!chunk.isEmpty()) {
+                Task last = chunk.get(chunk.size() - 1);
+                createdAt = last.getCreatedAt();
+                taskId = last.getTaskId();
+            }
+            this.writeChunk(writer, generator, chunk);
+        } while (chunk.size() == chunkSize);
+
+        generator.writeEndArray();
+        generator.close();
+    }
+
+    // Serialize while the chunk is still attached, so its tags load in batches, then drop it from the session
+    private void writeChunk(ObjectWriter writer, JsonGenerator generator, List<Task> chunk) throws IOException {
+        for (Task task : chunk) {
+            writer.writeValue(generator, task);
+        }
+        generator.flush();
+
+        entityManager.clear();
+    }
+}
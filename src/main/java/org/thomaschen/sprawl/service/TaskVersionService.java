@@ -0,0 +1,43 @@
+package org.thomaschen.sprawl.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.thomaschen.sprawl.model.TasksVersion;
+import org.thomaschen.sprawl.model.User;
+import org.thomaschen.sprawl.repository.UserRepository;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Tracks a per-user version of the tasks so polling clients can be answered with 304 Not Modified
+ * without loading any task. Every task mutation calls {@link #touch} inside its own transaction,
+ * before taking any other lock, so concurrent mutations of one user always lock in the same order.
+ */
+@Service
+public class TaskVersionService {
+
+    @Autowired
+    UserRepository userRepository;
+
+    /**
+     * Records a change to a user's tasks.
+     * @param owner the user owning the changed tasks
+     */
+    @Transactional
+    public void touch(User owner) {
+        userRepository.touchTasks(owner.getUserId(), Calendar.getInstance(TimeZone.getTimeZone("UTC")));
+    }
+
+    /**
+     * Reads the current version of a user's tasks from the database, bypassing any cached user.
+     * @param owner the user
+     * @return the version
+     */
+    @Transactional(readOnly = true)
+    public TasksVersion getVersion(User owner) {
+        return userRepository.findTasksVersion(owner.getUserId())
+                .orElseGet(() -> new TasksVersion(0L, null));
+    }
+}
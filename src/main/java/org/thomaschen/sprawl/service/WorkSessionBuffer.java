@@ -0,0 +1,241 @@
+package org.thomaschen.sprawl.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.thomaschen.sprawl.model.WorkSession;
+import org.thomaschen.sprawl.repository.WorkSessionRepository;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind buffer for the work session log. Sessions are queued once the transaction that
+ * stopped the timer commits and are inserted in JDBC batches on a fixed interval, or inline by
+ * the appending thread once too many are pending.
+ *
+ * Queued sessions already count towards their task's worked time through {@link #getPendingTime}.
+ * A failed insert keeps them queued for the next flush; sessions still queued when the process
+ * dies are lost along with their worked time.
+ */
+@Component
+public class WorkSessionBuffer {
+
+    private static final Logger logger = LoggerFactory.getLogger(WorkSessionBuffer.class);
+
+    @Autowired
+    WorkSessionRepository workSessionRepository;
+
+    private final TransactionTemplate transactionTemplate;
+    private final ConcurrentLinkedQueue<WorkSession> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final ConcurrentHashMap<UUID, Long> pendingTime = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    @Value("${sprawl.work-sessions.batch-size:500}")
+    int batchSize;
+
+    @Value("${sprawl.work-sessions.max-pending:10000}")
+    int maxPending;
+
+    @Autowired
+    public WorkSessionBuffer(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Queue a session for insertion after the current transaction, if any, commits.
+     * @param session the completed work session
+     */
+    public void append(WorkSession session) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    enqueue(session);
+                }
+            });
+        } else {
+            this.enqueue(session);
+        }
+    }
+
+    /**
+     * Retrieve the duration of the sessions of a task that are queued but not inserted yet.
+     * @param taskId the task
+     * @return the queued duration in seconds
+     */
+    public long getPendingTime(UUID taskId) {
+        return pendingTime.getOrDefault(taskId, 0L);
+    }
+
+    /**
+     * Remove the queued sessions of some tasks so the caller can insert them itself. If the current
+     * transaction rolls back they are queued again.
+     * @param taskIds the tasks
+     * @return the removed sessions
+     */
+    public List<WorkSession> take(Collection<UUID> taskIds) {
+        List<WorkSession> taken = this.remove(taskIds);
+        if (!taken.isEmpty() && TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != TransactionSynchronization.STATUS_COMMITTED) {
+                        for (WorkSession session : taken) {
+                            // The caller may have marked it compacted before its fold was rolled back
+                            session.setCompacted(false);
+                            enqueue(session);
+                        }
+                    }
+                }
+            });
+        }
+        return taken;
+    }
+
+    /**
+     * Drop the queued sessions of tasks that are being deleted once the current transaction, if any,
+     * commits, so they are never inserted.
+     * @param taskIds the tasks
+     */
+    public void discard(Collection<UUID> taskIds) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    remove(taskIds);
+                }
+            });
+        } else {
+            this.remove(taskIds);
+        }
+    }
+
+    // Waits for a running flush, whose sessions are then visible in the database instead
+    private List<WorkSession> remove(Collection<UUID> taskIds) {
+        Set<UUID> ids = new HashSet<>(taskIds);
+        List<WorkSession> removed = new ArrayList<>();
+        flushLock.lock();
+        try {
+            Iterator<WorkSession> iterator = pending.iterator();
+            while (iterator.hasNext()) {
+                WorkSession session = iterator.next();
+                if (ids.contains(session.getTaskId())) {
+                    iterator.remove();
+                    pendingCount.decrementAndGet();
+                    this.release(session);
+                    removed.add(session);
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+        return removed;
+    }
+
+    private void enqueue(WorkSession session) {
+        pendingTime.merge(session.getTaskId(), session.getDuration(), Long::sum);
+        pending.add(session);
+        if (pendingCount.incrementAndGet() >= maxPending) {
+            this.flush();
+        }
+    }
+
+    // Stop counting a session as pending once it is inserted or handed out
+    private void release(WorkSession session) {
+        pendingTime.computeIfPresent(session.getTaskId(), (taskId, time) -> {
+            long remaining = time - session.getDuration();
+            return remaining == 0 ? null : remaining;
+        });
+    }
+
+    /**
+     * Insert all queued sessions in batches.
+     */
+    @Scheduled(fixedDelayString = "${sprawl.work-sessions.flush-interval-ms:1000}")
+    public void flush() {
+        if (!flushLock.tryLock()) {
+            // Another thread is already draining the queue
+            return;
+        }
+
+        try {
+            List<WorkSession> batch = new ArrayList<>(batchSize);
+            WorkSession session;
+            while ((session = pending.poll()) != null) {
+                pendingCount.decrementAndGet();
+                batch.add(session);
+                if (batch.size() == batchSize) {
+                    if (!this.write(batch)) {
+                        return;
+                    }
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                this.write(batch);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    // Insert a batch, or put it back in the queue for the next flush if the insert fails. The batch stops
+    // counting as pending just before the insert commits, so readers never see it both pending and inserted
+    private boolean write(List<WorkSession> batch) {
+        try {
+            transactionTemplate.execute(status -> {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                    private boolean released;
+
+                    @Override
+                    public void beforeCommit(boolean readOnly) {
+                        batch.forEach(WorkSessionBuffer.this::release);
+                        released = true;
+                    }
+
+                    @Override
+                    public void afterCompletion(int status) {
+                        // The commit failed after the batch was released, it is pending again
+                        if (released && status != TransactionSynchronization.STATUS_COMMITTED) {
+                            for (WorkSession session : batch) {
+                                pendingTime.merge(session.getTaskId(), session.getDuration(), Long::sum);
+                            }
+                        }
+                    }
+                });
+                return workSessionRepository.saveAll(batch);
+            });
+        } catch (RuntimeException re) {
+            logger.error("Could not write {} work sessions, retrying on the next flush", batch.size(), re);
+            pending.addAll(batch);
+            pendingCount.addAndGet(batch.size());
+            return false;
+        }
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        this.flush();
+    }
+}
@@ -0,0 +1,230 @@
+package org.thomaschen.sprawl.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.thomaschen.sprawl.model.Task;
+import org.thomaschen.sprawl.model.TaskSummary;
+import org.thomaschen.sprawl.model.WorkSession;
+import org.thomaschen.sprawl.repository.TaskRepository;
+import org.thomaschen.sprawl.repository.WorkSessionRepository;
+
+import java.util.*;
+
+/**
+ * Derives worked time from the work session log. Stopping a timer only logs a session, which counts
+ * towards the task's worked time on reads until it is compacted into Task.workedTime: in bulk on a
+ * fixed interval, or for a single task when it is finished or its worked time is overwritten.
+ */
+@Service
+public class WorkSessionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(WorkSessionService.class);
+
+    @Autowired
+    TaskRepository taskRepository;
+
+    @Autowired
+    WorkSessionRepository workSessionRepository;
+
+    @Autowired
+    WorkSessionBuffer workSessionBuffer;
+
+    @Autowired
+    StatisticsService statisticsService;
+
+    @Autowired
+    TaskVersionService taskVersionService;
+
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${sprawl.work-sessions.compact-batch-size:1000}")
+    int compactBatchSize;
+
+    @Autowired
+    public WorkSessionService(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Load a task along with the time of its sessions that are not compacted yet, in one query.
+     * @param taskId the task
+     * @return the task, if it exists
+     */
+    public Optional<Task> findTask(UUID taskId) {
+        List<Object[]> rows = taskRepository.findWithSessionTimeByTaskId(taskId);
+        if (rows.isEmpty()) {
+            return Optional.empty();
+        }
+
+        Task task = (Task) rows.get(0)[0];
+        task.setSessionTime(((Number) rows.get(0)[1]).longValue() + workSessionBuffer.getPendingTime(taskId));
+        return Optional.of(task);
+    }
+
+    /**
+     * Fill in the time of sessions that are not compacted yet, with one query for all unfinished tasks.
+     * Finished tasks are compacted when they finish.
+     * @param tasks the tasks
+     * @return the same tasks
+     */
+    public List<Task> loadSessionTime(List<Task> tasks) {
+        List<UUID> ids = new ArrayList<>();
+        for (Task task : tasks) {
+            if (!task.getIsFinished()) {
+                ids.add(task.getTaskId());
+            }
+        }
+
+        Map<UUID, Long> stored = this.sumUncompacted(ids);
+        for (Task task : tasks) {
+            if (!task.getIsFinished()) {
+                task.setSessionTime(stored.getOrDefault(task.getTaskId(), 0L)
+                        + workSessionBuffer.getPendingTime(task.getTaskId()));
+            }
+        }
+        return tasks;
+    }
+
+    /**
+     * Add the time of sessions that are not compacted yet to summaries of unfinished tasks.
+     * @param summaries the task summaries
+     * @return the same summaries
+     */
+    public List<TaskSummary> loadSessionTimeOfSummaries(List<TaskSummary> summaries) {
+        List<UUID> ids = new ArrayList<>();
+        for (TaskSummary summary : summaries) {
+            if (!summary.getIsFinished()) {
+                ids.add(summary.getTaskId());
+            }
+        }
+
+        Map<UUID, Long> stored = this.sumUncompacted(ids);
+        for (TaskSummary summary : summaries) {
+            if (!summary.getIsFinished()) {
+                summary.addSessionTime(stored.getOrDefault(summary.getTaskId(), 0L)
+                        + workSessionBuffer.getPendingTime(summary.getTaskId()));
+            }
+        }
+        return summaries;
+    }
+
+    private Map<UUID, Long> sumUncompacted(Collection<UUID> taskIds) {
+        Map<UUID, Long> sums = new HashMap<>();
+        if (taskIds.isEmpty()) {
+            return sums;
+        }
+        for (Object[] row : workSessionRepository.sumUncompactedByTaskIdIn(taskIds)) {
+            sums.put((UUID) row[0], ((Number) row[1]).longValue());
+        }
+        return sums;
+    }
+
+    /**
+     * Compact every logged session of some tasks, including queued ones and the given sessions that
+     * close running timers. The caller adds the returned time to the tasks' workedTime in the same
+     * transaction, so a rollback undoes both.
+     * @param taskIds the tasks
+     * @param closing sessions ending now that are not logged yet
+     * @return the time to add per task, in seconds, for tasks that have any
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Map<UUID, Long> fold(Collection<UUID> taskIds, List<WorkSession> closing) {
+        Map<UUID, Long> folded = new HashMap<>();
+        if (taskIds.isEmpty()) {
+            return folded;
+        }
+
+        List<WorkSession> inserted = new ArrayList<>(closing);
+        inserted.addAll(workSessionBuffer.take(taskIds));
+        for (WorkSession session : inserted) {
+            session.setCompacted(true);
+            folded.merge(session.getTaskId(), session.getDuration(), Long::sum);
+        }
+
+        List<UUID> compacted = new ArrayList<>();
+        for (WorkSession session : workSessionRepository.findUncompactedForUpdateByTaskIdIn(taskIds)) {
+            folded.merge(session.getTaskId(), session.getDuration(), Long::sum);
+            compacted.add(session.getSessionId());
+        }
+
+        if (!inserted.isEmpty()) {
+            workSessionRepository.saveAll(inserted);
+        }
+        if (!compacted.isEmpty()) {
+            workSessionRepository.markCompacted(compacted);
+        }
+        // Task transitions are bulk updates that clear the session, which must not drop these inserts
+        workSessionRepository.flush();
+        return folded;
+    }
+
+    /**
+     * Fold logged sessions into their tasks' workedTime, oldest first, one batch per transaction.
+     * Sessions of deleted tasks are removed. Sessions that arrive after their task was finished are
+     * moved into its statistics along with the task.
+     */
+    @Scheduled(fixedDelayString = "${sprawl.work-sessions.compact-interval-ms:60000}")
+    public void compact() {
+        try {
+            Integer count;
+            do {
+                count = transactionTemplate.execute(status -> this.compactBatch());
+            } while (count != null && count == compactBatchSize);
+        } catch (RuntimeException re) {
+            logger.error("Could not compact work sessions, retrying on the next run", re);
+        }
+    }
+
+    private int compactBatch() {
+        List<WorkSession> sessions = workSessionRepository.findUncompactedForUpdate(PageRequest.of(0, compactBatchSize));
+        if (sessions.isEmpty()) {
+            return 0;
+        }
+
+        Map<UUID, Long> folded = new HashMap<>();
+        Map<UUID, List<UUID>> sessionIds = new HashMap<>();
+        for (WorkSession session : sessions) {
+            folded.merge(session.getTaskId(), session.getDuration(), Long::sum);
+            sessionIds.computeIfAbsent(session.getTaskId(), taskId -> new ArrayList<>()).add(session.getSessionId());
+        }
+
+        List<UUID> compacted = new ArrayList<>();
+        for (Task task : taskRepository.findAllById(folded.keySet())) {
+            long time = folded.remove(task.getTaskId());
+            compacted.addAll(sessionIds.get(task.getTaskId()));
+            if (time == 0) {
+                continue;
+            }
+
+            if (!task.getIsFinished()) {
+                taskRepository.addWorkedTime(task.getTaskId(), time);
+                continue;
+            }
+
+            // A late session changes a finished task, whose statistics must move with it
+            statisticsService.recordRemoved(task);
+            taskRepository.addWorkedTime(task.getTaskId(), time);
+            task.setSessionTime(time);
+            statisticsService.recordFinished(task);
+            taskVersionService.touch(task.getOwner());
+        }
+
+        if (!folded.isEmpty()) {
+            // Tasks deleted while their sessions were still queued
+            workSessionRepository.deleteByTaskIdIn(folded.keySet());
+        }
+        if (!compacted.isEmpty()) {
+            workSessionRepository.markCompacted(compacted);
+        }
+        return sessions.size();
+    }
+}
@@ -0,0 +1,65 @@
+package org.thomaschen.sprawl.stats;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+/**
+ * Aggregate statistics over a set of finished tasks.
+ */
+@JsonPropertyOrder({"totalTasks", "totalOver", "totalUnder", "avgTaskCompletionTime", "avgEstFactor",
+        "avgDailyTaskTime", "todaysEstFactor", "todaysWorkedTime"})
+public class AggregateStatistics {
+
+    private final long totalTasks;
+    private final long totalOver;
+    private final long totalUnder;
+    private final double avgTaskCompletionTime;
+    private final double avgEstFactor;
+    private final double avgDailyTaskTime;
+    private final double todaysEstFactor;
+    private final double todaysWorkedTime;
+
+    public AggregateStatistics(long totalTasks, long totalOver, long totalUnder,
+                               double avgTaskCompletionTime, double avgEstFactor, double avgDailyTaskTime,
+                               double todaysEstFactor, double todaysWorkedTime) {
+        this.totalTasks = totalTasks;
+        this.totalOver = totalOver;
+        this.totalUnder = totalUnder;
+        this.avgTaskCompletionTime = avgTaskCompletionTime;
+        this.avgEstFactor = avgEstFactor;
+        this.avgDailyTaskTime = avgDailyTaskTime;
+        this.todaysEstFactor = todaysEstFactor;
+        this.todaysWorkedTime = todaysWorkedTime;
+    }
+
+    public long getTotalTasks() {
+        return totalTasks;
+    }
+
+    public long getTotalOver() {
+        return totalOver;
+    }
+
+    public long getTotalUnder() {
+        return totalUnder;
+    }
+
+    public double getAvgTaskCompletionTime() {
+        return avgTaskCompletionTime;
+    }
+
+    public double getAvgEstFactor() {
+        return avgEstFactor;
+    }
+
+    public double getAvgDailyTaskTime() {
+        return avgDailyTaskTime;
+    }
+
+    public double getTodaysEstFactor() {
+        return todaysEstFactor;
+    }
+
+    public double getTodaysWorkedTime() {
+        return todaysWorkedTime;
+    }
+}
@@ -0,0 +1,53 @@
+package org.thomaschen.sprawl.stats;
+
+import java.util.List;
+
+/**
+ * The default statistics views of one user, computed ahead of a request.
+ * Valid only for the version of the user's tasks and the day it was computed for.
+ */
+public class Dashboard {
+
+    private final long tasksVersion;
+    private final long epochDay;
+    private final AggregateStatistics aggregate;
+    private final List<TimeSeries> estimation;
+    private final List<TimeSeries> totalTasks;
+
+    public Dashboard(long tasksVersion, long epochDay, AggregateStatistics aggregate,
+                     List<TimeSeries> estimation, List<TimeSeries> totalTasks) {
+        this.tasksVersion = tasksVersion;
+        this.epochDay = epochDay;
+        this.aggregate = aggregate;
+        this.estimation = estimation;
+        this.totalTasks = totalTasks;
+    }
+
+    /**
+     * Checks whether the views still reflect the user's tasks.
+     * @param tasksVersion the current version of the user's tasks
+     * @param epochDay the current UTC day
+     * @return true if nothing changed since the views were computed
+     */
+    public boolean isCurrent(long tasksVersion, long epochDay) {
+        return this.tasksVersion == tasksVersion && this.epochDay == epochDay;
+    }
+
+    public AggregateStatistics getAggregate() {
+        return aggregate;
+    }
+
+    /**
+     * Hourly estimation series over the full history.
+     */
+    public List<TimeSeries> getEstimation() {
+        return estimation;
+    }
+
+    /**
+     * Daily finished task counts over the full history.
+     */
+    public List<TimeSeries> getTotalTasks() {
+        return totalTasks;
+    }
+}
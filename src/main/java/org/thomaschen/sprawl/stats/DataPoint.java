@@ -0,0 +1,26 @@
+package org.thomaschen.sprawl.stats;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+/**
+ * Labelled value of a time series.
+ */
+@JsonPropertyOrder({"name", "value"})
+public class DataPoint {
+
+    private final String name;
+    private final Number value;
+
+    public DataPoint(String name, Number value) {
+        this.name = name;
+        this.value = value;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Number getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,88 @@
+package org.thomaschen.sprawl.stats;
+
+import org.thomaschen.sprawl.exception.InvalidParameterException;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Bucket size of a statistics time series. Buckets are aligned to UTC, weeks start on Monday.
+ */
+public enum Resolution {
+    HOUR("yyyy-MM-dd'T'HH"),
+    DAY("yyyy-MM-dd"),
+    WEEK("yyyy-MM-dd"),
+    MONTH("yyyy-MM");
+
+    private static final long MILLIS_PER_HOUR = 60L * 60 * 1000;
+
+    private static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+
+    private final String pattern;
+
+    Resolution(String pattern) {
+        this.pattern = pattern;
+    }
+
+    /**
+     * Parses a resolution name case-insensitively.
+     * @param value the name, may be null
+     * @return the resolution, or null if no value was given
+     */
+    public static Resolution parse(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return Resolution.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException iae) {
+            throw new InvalidParameterException("Statistics", "resolution", value);
+        }
+    }
+
+    /**
+     * Length of the stored rollup buckets a series of this resolution is read from, hours for hourly series
+     * and days otherwise. Ranges of such series must start and end on a boundary of these buckets.
+     * @return the rollup bucket length in milliseconds
+     */
+    public long getRollupMillis() {
+        return this == HOUR ? MILLIS_PER_HOUR : MILLIS_PER_DAY;
+    }
+
+    /**
+     * Truncates a point in time to the start of its bucket.
+     * @param millis milliseconds since the epoch
+     * @return the start of the bucket in milliseconds since the epoch
+     */
+    public long truncate(long millis) {
+        switch (this) {
+            case HOUR:
+                return Math.floorDiv(millis, MILLIS_PER_HOUR) * MILLIS_PER_HOUR;
+            case DAY:
+                return Math.floorDiv(millis, MILLIS_PER_DAY) * MILLIS_PER_DAY;
+            case WEEK:
+                // 1970-01-01 was a Thursday, three days after the Monday starting its week
+                long epochDay = Math.floorDiv(millis, MILLIS_PER_DAY);
+                return (epochDay - Math.floorMod(epochDay + 3, 7)) * MILLIS_PER_DAY;
+            default:
+                Calendar month = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+                month.setTimeInMillis(Math.floorDiv(millis, MILLIS_PER_DAY) * MILLIS_PER_DAY);
+                month.set(Calendar.DAY_OF_MONTH, 1);
+                return month.getTimeInMillis();
+        }
+    }
+
+    /**
+     * Formats the start of a bucket the way the chart client labels it.
+     * @param millis start of the bucket in milliseconds since the epoch
+     * @return the label
+     */
+    public String format(long millis) {
+        SimpleDateFormat sdf = new SimpleDateFormat(pattern);
+        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return sdf.format(new Date(millis));
+    }
+}
@@ -0,0 +1,24 @@
+package org.thomaschen.sprawl.stats;
+
+/**
+ * Sums over a range of rollup rows, as returned by the rollup repositories.
+ */
+public class RollupTotals {
+
+    private final long taskCount;
+    private final double estFactorSum;
+
+    public RollupTotals(Long taskCount, Double estFactorSum) {
+        // Sums over no rows come back as null
+        this.taskCount = taskCount == null ? 0 : taskCount;
+        this.estFactorSum = estFactorSum == null ? 0.0 : estFactorSum;
+    }
+
+    public long getTaskCount() {
+        return taskCount;
+    }
+
+    public double getEstFactorSum() {
+        return estFactorSum;
+    }
+}
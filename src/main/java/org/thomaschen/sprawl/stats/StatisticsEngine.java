@@ -0,0 +1,148 @@
+package org.thomaschen.sprawl.stats;
+
+import org.thomaschen.sprawl.model.DailyStatistics;
+import org.thomaschen.sprawl.model.Task;
+
+import java.util.*;
+
+/**
+ * Computes task statistics in a single pass over a task list, bucketing by UTC epoch day
+ * instead of formatted date strings. Results match the individual helpers on {@link Task},
+ * except that aggregates count the estimation factor of tasks without an expected duration as 0,
+ * as the stored statistics do.
+ */
+public final class StatisticsEngine {
+
+    private StatisticsEngine() {
+    }
+
+    /**
+     * Computes the aggregate statistics of a list of finished tasks relative to the current UTC day.
+     * @param tasks the finished tasks
+     * @return the aggregate statistics
+     */
+    public static AggregateStatistics aggregate(List<Task> tasks) {
+        return aggregate(tasks, DailyStatistics.getEpochDay(Calendar.getInstance(TimeZone.getTimeZone("UTC"))));
+    }
+
+    /**
+     * Computes the aggregate statistics of a list of finished tasks.
+     * @param tasks the finished tasks
+     * @param today the epoch day treated as today
+     * @return the aggregate statistics
+     */
+    public static AggregateStatistics aggregate(List<Task> tasks, long today) {
+        int size = tasks.size();
+        long totalOver = 0;
+        long totalUnder = 0;
+        long totalWorkedTime = 0;
+        double totalEstFactor = 0.0;
+
+        long todaysTasks = 0;
+        long todaysWorkedTime = 0;
+        double todaysEstFactor = 0.0;
+
+        // Tasks normally arrive ordered by updatedAt, so distinct days can be counted without sorting
+        long[] days = new long[size];
+        boolean sorted = true;
+
+        for (int i = 0; i < size; i++) {
+            Task task = tasks.get(i);
+            long workedTime = task.getWorkedTime();
+            long expDuration = task.getExpDuration();
+            // Clamped like the stored statistics, so a task without expected duration does not poison every average
+            double estFactor = DailyStatistics.getEstFactor(task);
+
+            if (workedTime > expDuration) {
+                totalOver++;
+            } else if (workedTime < expDuration) {
+                totalUnder++;
+            }
+            totalWorkedTime += workedTime;
+            totalEstFactor += estFactor;
+
+            long day = DailyStatistics.getEpochDay(task.getUpdatedAt());
+            days[i] = day;
+            if (i > 0 && day < days[i - 1]) {
+                sorted = false;
+            }
+
+            if (day == today) {
+                todaysTasks++;
+                todaysWorkedTime += workedTime;
+                todaysEstFactor += estFactor;
+            }
+        }
+
+        if (!sorted) {
+            Arrays.sort(days);
+        }
+        long activeDays = 0;
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || days[i] != days[i - 1]) {
+                activeDays++;
+            }
+        }
+
+        return new AggregateStatistics(
+                size,
+                totalOver,
+                totalUnder,
+                (double) totalWorkedTime / size,
+                totalEstFactor / size,
+                (double) totalWorkedTime / activeDays,
+                todaysEstFactor / todaysTasks,
+                (double) todaysWorkedTime);
+    }
+
+    /**
+     * Partitions tasks by trimmed tag name in a single pass. Each task appears at most once per tag
+     * and keeps its position relative to the other tasks in the input.
+     * @param tasks the tasks to group
+     * @return the tasks carrying each tag, ordered by tag name
+     */
+    public static Map<String, List<Task>> groupByTag(List<Task> tasks) {
+        Map<String, List<Task>> groups = new TreeMap<>();
+
+        for (Task task : tasks) {
+            List<String> tags = task.getTags();
+            for (int i = 0; i < tags.size(); i++) {
+                String tag = tags.get(i).trim();
+                List<Task> group = groups.get(tag);
+                if (group == null) {
+                    group = new ArrayList<>();
+                    groups.put(tag, group);
+                }
+                // Tags differing only in whitespace map to the same group, which already ends with this task
+                if (group.isEmpty() || group.get(group.size() - 1) != task) {
+                    group.add(task);
+                }
+            }
+        }
+
+        return groups;
+    }
+
+    /**
+     * Computes the running average worked/expected ratio of tasks, keeping the value reached at the end
+     * of each bucket. Follows the per-task series of {@link Task#getTimeSeriesOfTaskEstFactor} sampled per bucket,
+     * except that tasks without an expected duration count as 0 as in {@link DailyStatistics#getEstFactor}
+     * instead of turning the average into Infinity or NaN.
+     * @param tasks the finished tasks, ordered by updatedAt
+     * @param resolution the bucket size
+     * @return the running average by bucket start, in ascending order
+     */
+    public static Map<Long, Double> runningEstFactor(List<Task> tasks, Resolution resolution) {
+        Map<Long, Double> buckets = new LinkedHashMap<>();
+
+        double runSumEstFactor = 0.0;
+        int runTotal = 0;
+        for (Task task : tasks) {
+            runSumEstFactor += DailyStatistics.getEstFactor(task);
+            runTotal++;
+            buckets.put(resolution.truncate(task.getUpdatedAt().getTimeInMillis()), runSumEstFactor / runTotal);
+        }
+
+        return buckets;
+    }
+}
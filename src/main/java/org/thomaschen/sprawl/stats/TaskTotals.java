@@ -0,0 +1,49 @@
+package org.thomaschen.sprawl.stats;
+
+/**
+ * Sums over a set of finished tasks computed by the database, as returned by the aggregate queries of the task repository.
+ */
+public class TaskTotals {
+
+    private final long taskCount;
+    private final long overCount;
+    private final long underCount;
+    private final long workedTime;
+    private final double estFactorSum;
+    private final long activeDays;
+
+    public TaskTotals(Long taskCount, Long overCount, Long underCount, Long workedTime, Double estFactorSum,
+                      Long activeDays) {
+        // Sums over no rows come back as null
+        this.taskCount = taskCount == null ? 0 : taskCount;
+        this.overCount = overCount == null ? 0 : overCount;
+        this.underCount = underCount == null ? 0 : underCount;
+        this.workedTime = workedTime == null ? 0 : workedTime;
+        this.estFactorSum = estFactorSum == null ? 0.0 : estFactorSum;
+        this.activeDays = activeDays == null ? 0 : activeDays;
+    }
+
+    public long getTaskCount() {
+        return taskCount;
+    }
+
+    public long getOverCount() {
+        return overCount;
+    }
+
+    public long getUnderCount() {
+        return underCount;
+    }
+
+    public long getWorkedTime() {
+        return workedTime;
+    }
+
+    public double getEstFactorSum() {
+        return estFactorSum;
+    }
+
+    public long getActiveDays() {
+        return activeDays;
+    }
+}
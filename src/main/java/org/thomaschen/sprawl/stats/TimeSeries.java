@@ -0,0 +1,28 @@
+package org.thomaschen.sprawl.stats;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+import java.util.List;
+
+/**
+ * Named series of data points, in the shape the chart client draws.
+ */
+@JsonPropertyOrder({"name", "series"})
+public class TimeSeries {
+
+    private final String name;
+    private final List<DataPoint> series;
+
+    public TimeSeries(String name, List<DataPoint> series) {
+        this.name = name;
+        this.series = series;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<DataPoint> getSeries() {
+        return series;
+    }
+}
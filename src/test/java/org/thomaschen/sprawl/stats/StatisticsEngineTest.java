@@ -0,0 +1,178 @@
+package org.thomaschen.sprawl.stats;
+
+import org.junit.jupiter.api.Test;
+import org.thomaschen.sprawl.model.DailyStatistics;
+import org.thomaschen.sprawl.model.Task;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks StatisticsEngine.aggregate against the per-statistic helpers on Task it replaced. The one
+ * documented difference is the estimation factor of tasks without an expected duration, which the engine
+ * counts as 0 where the helpers divide by zero.
+ */
+public class StatisticsEngineTest {
+
+    private static final long MILLIS_PER_HOUR = 60L * 60 * 1000;
+    private static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void matchesHelpersOnGeneratedHistories() {
+        Random random = new Random(42);
+        for (int history = 0; history < 50; history++) {
+            List<Task> tasks = new ArrayList<>();
+            int size = 1 + random.nextInt(200);
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < size; i++) {
+                long finishedAt = now - (long) (random.nextDouble() * 30 * MILLIS_PER_DAY);
+                long expDuration = random.nextInt(5) == 0 ? 0 : 1 + random.nextInt(7200);
+                tasks.add(task(finishedAt - random.nextInt(4 * 3600) * 1000L, finishedAt,
+                        expDuration, random.nextInt(7200), random.nextInt(600)));
+            }
+            tasks.sort((a, b) -> a.getUpdatedAt().compareTo(b.getUpdatedAt()));
+
+            assertMatchesHelpers(tasks, today(now));
+        }
+    }
+
+    @Test
+    public void matchesHelpersOnUnorderedTasks() {
+        Random random = new Random(7);
+        List<Task> tasks = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 100; i++) {
+            long finishedAt = now - random.nextInt(10) * MILLIS_PER_DAY;
+            tasks.add(task(finishedAt - 3600_000, finishedAt, 1 + random.nextInt(3600), random.nextInt(3600), 0));
+        }
+        Collections.shuffle(tasks, random);
+
+        assertMatchesHelpers(tasks, today(now));
+    }
+
+    @Test
+    public void matchesHelpersOnTasksSpanningMidnight() {
+        long now = System.currentTimeMillis();
+        long midnight = Math.floorDiv(now, MILLIS_PER_DAY) * MILLIS_PER_DAY;
+        List<Task> tasks = new ArrayList<>();
+        for (int day = 3; day >= 0; day--) {
+            long dayStart = midnight - day * MILLIS_PER_DAY;
+            // Started before midnight, finished just after it, so it belongs to the later day
+            tasks.add(task(dayStart - MILLIS_PER_HOUR, dayStart + 1000, 1800, 3600, 0));
+            // Finished in the last second before midnight, so it belongs to the earlier day
+            tasks.add(task(dayStart - 2 * MILLIS_PER_HOUR, dayStart - 1000, 7200, 5400, 120));
+        }
+        tasks.sort((a, b) -> a.getUpdatedAt().compareTo(b.getUpdatedAt()));
+
+        assertMatchesHelpers(tasks, today(now));
+    }
+
+    @Test
+    public void matchesHelpersOnSingleTask() {
+        long now = System.currentTimeMillis();
+        long today = today(now);
+        assertMatchesHelpers(Collections.singletonList(task(now - MILLIS_PER_HOUR, now, 3000, 3600, 60)), today);
+        assertMatchesHelpers(Collections.singletonList(task(now - 3 * MILLIS_PER_DAY, now - 2 * MILLIS_PER_DAY, 3600, 1200, 0)), today);
+    }
+
+    @Test
+    public void countsEstFactorWithoutExpectedDurationAsZero() {
+        long now = System.currentTimeMillis();
+        List<Task> tasks = new ArrayList<>();
+        tasks.add(task(now - MILLIS_PER_HOUR, now, 0, 3600, 0));
+        tasks.add(task(now - MILLIS_PER_HOUR, now, 0, 0, 0));
+        long today = today(now);
+
+        AggregateStatistics stats = StatisticsEngine.aggregate(tasks, today);
+
+        // The helpers yield Infinity and NaN here, which the stored statistics cannot hold
+        assertFalse(Double.isFinite(Task.getEstAccuracy(tasks)));
+        assertEquals(0.0, stats.getAvgEstFactor(), DELTA);
+        assertEquals(0.0, stats.getTodaysEstFactor(), DELTA);
+        assertMatchesHelpers(tasks, today);
+    }
+
+    @Test
+    public void leavesTodaysEstFactorUndefinedWithoutTasksToday() {
+        long now = System.currentTimeMillis();
+        AggregateStatistics stats = StatisticsEngine.aggregate(
+                Collections.singletonList(task(now - 3 * MILLIS_PER_DAY, now - 2 * MILLIS_PER_DAY, 3600, 1800, 0)), today(now));
+
+        assertTrue(Double.isNaN(stats.getTodaysEstFactor()));
+        assertEquals(0.0, stats.getTodaysWorkedTime(), DELTA);
+    }
+
+    // Compare every statistic with its helper, substituting 0 for the helpers' non-finite est factors. Today's
+    // figures come from the helpers applied to the tasks of the given day, as the today helpers read the clock
+    private static void assertMatchesHelpers(List<Task> tasks, long today) {
+        AggregateStatistics stats = StatisticsEngine.aggregate(tasks, today);
+
+        assertEquals(tasks.size(), stats.getTotalTasks());
+        assertEquals(Task.getTotalOver(tasks), stats.getTotalOver());
+        assertEquals(Task.getTotalUnder(tasks), stats.getTotalUnder());
+        assertEquals(Task.getAverageTaskCompletionTime(tasks), stats.getAvgTaskCompletionTime(), DELTA);
+        assertEquals(Task.getAverageDailyWorkTime(tasks), stats.getAvgDailyTaskTime(), DELTA);
+
+        List<Task> estimated = withExpectedDuration(tasks);
+        double avgEstFactor = estimated.isEmpty() ? 0.0
+                : Task.getEstAccuracy(estimated) * estimated.size() / tasks.size();
+        assertEquals(avgEstFactor, stats.getAvgEstFactor(), DELTA);
+
+        List<Task> todays = new ArrayList<>();
+        for (Task task : tasks) {
+            if (DailyStatistics.getEpochDay(task.getUpdatedAt()) == today) {
+                todays.add(task);
+            }
+        }
+        double todaysWorkedTime = 0.0;
+        for (Task task : todays) {
+            todaysWorkedTime += task.getWorkedTime();
+        }
+        assertEquals(todaysWorkedTime, stats.getTodaysWorkedTime(), DELTA);
+
+        List<Task> todaysEstimated = withExpectedDuration(todays);
+        double todaysEstFactor = todays.isEmpty() ? Double.NaN : todaysEstimated.isEmpty() ? 0.0
+                : Task.getEstAccuracy(todaysEstimated) * todaysEstimated.size() / todays.size();
+        assertEquals(todaysEstFactor, stats.getTodaysEstFactor(), DELTA);
+    }
+
+    private static List<Task> withExpectedDuration(List<Task> tasks) {
+        List<Task> estimated = new ArrayList<>();
+        for (Task task : tasks) {
+            if (task.getExpDuration() != 0) {
+                estimated.add(task);
+            }
+        }
+        return estimated;
+    }
+
+    private static long today(long now) {
+        return DailyStatistics.getEpochDay(at(now));
+    }
+
+    // A finished task, with part of its worked time still in uncompacted sessions
+    private static Task task(long createdAt, long finishedAt, long expDuration, long workedTime, long sessionTime) {
+        Task task = new Task(null, "Task", "", expDuration, Collections.emptyList());
+        task.setCreatedAt(at(createdAt));
+        task.setUpdatedAt(at(finishedAt));
+        task.setWorkedTime(workedTime);
+        task.setSessionTime(sessionTime);
+        task.setIsFinished(true);
+        return task;
+    }
+
+    private static Calendar at(long millis) {
+        Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        time.setTimeInMillis(millis);
+        return time;
+    }
+}